@@ -100,12 +100,56 @@ public class Settings {
         prefs.putBoolean(Options.ALWAYS_FULL_BACKUP.getKey(), alwaysFullBackup);
     }
 
+    public static boolean getVerifySave() {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        return prefs.getBoolean(Options.VERIFY_SAVE.getKey(), true);
+    }
+
+    public static void setVerifySave(boolean verifySave) {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        prefs.putBoolean(Options.VERIFY_SAVE.getKey(), verifySave);
+    }
+
+    public static boolean getAutoSave() {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        return prefs.getBoolean(Options.AUTO_SAVE.getKey(), false);
+    }
+
+    public static void setAutoSave(boolean autoSave) {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        prefs.putBoolean(Options.AUTO_SAVE.getKey(), autoSave);
+    }
+
+    public static int getAutoSaveQuietPeriod() {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        return prefs.getInt(Options.AUTO_SAVE_QUIET_PERIOD.getKey(), 3000);
+    }
+
+    public static void setAutoSaveQuietPeriod(int millis) {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        prefs.putInt(Options.AUTO_SAVE_QUIET_PERIOD.getKey(), millis);
+    }
+
+    public static int getAutoSaveMaxDelay() {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        return prefs.getInt(Options.AUTO_SAVE_MAX_DELAY.getKey(), 30000);
+    }
+
+    public static void setAutoSaveMaxDelay(int millis) {
+        Preferences prefs = Preferences.userNodeForPackage(Settings.class);
+        prefs.putInt(Options.AUTO_SAVE_MAX_DELAY.getKey(), millis);
+    }
+
     enum Options {
         LAST_DETECTED_GAMEPATH("last_detectedgamepath"),
         LAST_DETECTED_GAMEVERSION("last_detectedgameversion"),
         LAST_DETECTED_INSTALLTYPE("last_detectedinstalltype"),
         LAST_DETECTED_TQBASEPATH("last_detectedtqbasepath"),
         ALWAYS_FULL_BACKUP("always_fullbackup"),
+        VERIFY_SAVE("verify_save"),
+        AUTO_SAVE("auto_save"),
+        AUTO_SAVE_QUIET_PERIOD("auto_save_quiet_period"),
+        AUTO_SAVE_MAX_DELAY("auto_save_max_delay"),
         ;
 
         private final String key;
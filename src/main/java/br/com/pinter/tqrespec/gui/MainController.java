@@ -20,6 +20,7 @@
 
 package br.com.pinter.tqrespec.gui;
 
+import br.com.pinter.tqrespec.Settings;
 import br.com.pinter.tqrespec.core.MyEventHandler;
 import br.com.pinter.tqrespec.core.MyTask;
 import br.com.pinter.tqrespec.core.State;
@@ -27,6 +28,8 @@ import br.com.pinter.tqrespec.core.UnhandledRuntimeException;
 import br.com.pinter.tqrespec.core.WorkerThread;
 import br.com.pinter.tqrespec.logging.Log;
 import br.com.pinter.tqrespec.save.SaveLocation;
+import br.com.pinter.tqrespec.save.UID;
+import br.com.pinter.tqrespec.save.player.AutoSaver;
 import br.com.pinter.tqrespec.save.player.Player;
 import br.com.pinter.tqrespec.save.player.PlayerWriter;
 import br.com.pinter.tqrespec.tqdata.Db;
@@ -65,12 +68,16 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.ResourceBundle;
+import java.util.Set;
 
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.ERROR;
@@ -116,6 +123,8 @@ public class MainController implements Initializable {
     @Inject
     private PlayerWriter playerWriter;
     @Inject
+    private AutoSaver autoSaver;
+    @Inject
     private CheckVersionService checkVersionService;
     @Inject
     private GameInfo gameInfo;
@@ -234,6 +243,11 @@ public class MainController implements Initializable {
 
     @FXML
     public void close(MouseEvent evt) {
+        if (!State.get().isSaveInProgress()) {
+            // changes not saved are abandoned, with their journal
+            autoSaver.stop();
+            player.reset();
+        }
         uiUtils.closeApplication();
     }
 
@@ -285,6 +299,7 @@ public class MainController implements Initializable {
     }
 
     public void reset() {
+        autoSaver.stop();
         pointsPaneController.clearProperties();
         skillsPaneController.reset();
         miscPaneController.reset();
@@ -440,17 +455,19 @@ public class MainController implements Initializable {
         }
 
         //keep after any teleport operation like difficulty and boostedCharacterForX4
+        Map<Integer, Set<UID>> insertTeleports = new HashMap<>();
+        Map<Integer, Set<UID>> removeTeleports = new HashMap<>();
         for (Map.Entry<TeleportItem, String> e : playerProps().getTeleportChanges().entrySet()) {
             if (e.getValue().equals(TeleportItem.Ops.INSERT.name())) {
-                player.insertTeleport(e.getKey().getDifficulty(), e.getKey().getTeleport().getUid());
+                insertTeleports.computeIfAbsent(e.getKey().getDifficulty(), k -> new LinkedHashSet<>()).add(e.getKey().getTeleport().getUid());
                 logger.log(DEBUG, "INSERT TELEPORT: " + e.getKey());
             } else if (e.getValue().equals(TeleportItem.Ops.REMOVE.name())) {
-                player.removeTeleport(e.getKey().getDifficulty(), e.getKey().getTeleport().getUid());
+                removeTeleports.computeIfAbsent(e.getKey().getDifficulty(), k -> new LinkedHashSet<>()).add(e.getKey().getTeleport().getUid());
                 logger.log(DEBUG, "REMOVE TELEPORT: " + e.getKey());
             }
         }
         if (!playerProps().getTeleportChanges().isEmpty()) {
-            player.setTeleportUIDsSize();
+            player.updateTeleports(insertTeleports, removeTeleports);
         }
     }
 
@@ -477,45 +494,40 @@ public class MainController implements Initializable {
             return;
         }
 
-        MyTask<Integer> backupSaveGameTask = new MyTask<>() {
+        setAllControlsDisable(true);
+        autoSaver.stop();
+        PlayerWriter.Backup backup = playerWriter.prepareBackup();
+
+        MyTask<Integer> saveGameTask = new MyTask<>() {
             @Override
             protected Integer call() {
-                setAllControlsDisable(true);
+                // the file on disk is backed up before it's replaced, the character isn't saved without a backup
+                autoSaver.awaitIdle();
                 try {
-                    return playerWriter.backupCurrent() ? 2 : 0;
+                    if (!backup.create()) {
+                        return 1;
+                    }
                 } catch (IOException e) {
-                    throw new UnhandledRuntimeException("Error starting backup", e);
+                    logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
+                    return 1;
                 }
-            }
-        };
-        MyTask<Integer> saveGameTask = new MyTask<>() {
-            @Override
-            protected Integer call() {
                 commitChanges();
                 return playerWriter.save() ? 2 : 0;
             }
         };
 
         //noinspection Convert2Lambda
-        backupSaveGameTask.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, new MyEventHandler<>() {
+        saveGameTask.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, new MyEventHandler<>() {
             @Override
             public void handleEvent(WorkerStateEvent workerStateEvent) {
-                if ((int) backupSaveGameTask.getValue() == 2) {
-                    setCursorWaitOnTask(saveGameTask);
-                    new WorkerThread(saveGameTask).start();
-                } else {
+                int result = saveGameTask.getValue();
+                if (result == 1) {
                     uiUtils.showError(ResourceHelper.getMessage("alert.errorbackup_header"),
                             ResourceHelper.getMessage("alert.errorbackup_content", Constants.BACKUP_DIRECTORY));
                     setAllControlsDisable(false);
+                    return;
                 }
-            }
-        });
-
-        //noinspection Convert2Lambda
-        saveGameTask.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, new MyEventHandler<>() {
-            @Override
-            public void handleEvent(WorkerStateEvent workerStateEvent) {
-                if ((int) saveGameTask.getValue() != 2) {
+                if (result != 2) {
                     uiUtils.showError(ResourceHelper.getMessage("alert.errorsaving_header"),
                             ResourceHelper.getMessage("alert.errorsaving_content", Constants.BACKUP_DIRECTORY));
                 }
@@ -523,8 +535,8 @@ public class MainController implements Initializable {
                 reset();
             }
         });
-        setCursorWaitOnTask(backupSaveGameTask);
-        new WorkerThread(backupSaveGameTask).start();
+        setCursorWaitOnTask(saveGameTask);
+        new WorkerThread(saveGameTask).start();
     }
 
     public void setAllControlsDisable(boolean disable) {
@@ -565,10 +577,14 @@ public class MainController implements Initializable {
         pointsPaneController.disableControls(false);
         miscPaneController.reset();
         miscPaneController.disableControls(false);
+        // changes not saved of the previous character stay staged in its session, not saved in background
+        autoSaver.stop();
 
         MyTask<Boolean> loadTask = new MyTask<>() {
             @Override
             protected Boolean call() {
+                // a background save of the previous character marks a save in progress until it finishes
+                autoSaver.awaitIdle();
                 boolean loaded = player.loadPlayer(playerCharacterFile.getPlayerName(), playerCharacterFile.getLocation());
                 if (player.getHasBeenInGame() == 0) {
                     Platform.runLater(() -> {
@@ -588,6 +604,17 @@ public class MainController implements Initializable {
         loadTask.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, new MyEventHandler<>() {
             @Override
             public void handleEvent(WorkerStateEvent workerStateEvent) {
+                if (player.hasUnsavedChanges()) {
+                    if (uiUtils.showConfirmation(ResourceHelper.getMessage("alert.unsavedchanges_header"),
+                            ResourceHelper.getMessage("alert.unsavedchanges_content"))) {
+                        if (!player.restoreUnsavedChanges()) {
+                            uiUtils.showError(ResourceHelper.getMessage("alert.unsavedchangesfailed_header"),
+                                    ResourceHelper.getMessage("alert.unsavedchangesfailed_content"));
+                        }
+                    } else {
+                        player.discardUnsavedChanges();
+                    }
+                }
                 playerProperties = new UiPlayerProperties(player);
                 pointsPaneController.loadCharHandler();
                 miscPaneController.loadCharEventHandler();
@@ -597,6 +624,7 @@ public class MainController implements Initializable {
                 characterCombo.setDisable(false);
                 miscPaneController.disableControls(false);
                 tabPane.getSelectionModel().select(attributesTab);
+                watchChanges();
             }
         });
 
@@ -631,6 +659,19 @@ public class MainController implements Initializable {
         new WorkerThread(loadTask).start();
     }
 
+    private void watchChanges() {
+        if (!Settings.getAutoSave()) {
+            return;
+        }
+        try {
+            autoSaver.setQuietPeriod(Duration.ofMillis(Settings.getAutoSaveQuietPeriod()));
+            autoSaver.setMaxDelay(Duration.ofMillis(Settings.getAutoSaveMaxDelay()));
+            autoSaver.watch(playerWriter.prepareBackup());
+        } catch (IllegalArgumentException e) {
+            logger.log(ERROR, "Unable to start saving in background", e);
+        }
+    }
+
     @FXML
     public void startMoveWindow(MouseEvent evt) {
         if (evt.getButton() == MouseButton.PRIMARY) {
@@ -27,6 +27,7 @@ import br.com.pinter.tqrespec.util.Build;
 import br.com.pinter.tqrespec.util.Constants;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.Tooltip;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -60,6 +61,18 @@ public class UIUtils {
         alert.showAndWait();
     }
 
+    /**
+     * @return true if the user confirmed
+     */
+    public boolean showConfirmation(String message, String contentText) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.initModality(Modality.APPLICATION_MODAL);
+        alert.setTitle(Build.title());
+        alert.setHeaderText(message);
+        alert.setContentText(contentText);
+        return alert.showAndWait().filter(ButtonType.OK::equals).isPresent();
+    }
+
     public Tooltip simpleTooltip(String message) {
         Tooltip tooltip = new Tooltip(message);
         tooltip.setFont(Constants.UI.TOOLTIP_FONT);
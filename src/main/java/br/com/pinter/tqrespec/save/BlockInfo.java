@@ -40,6 +40,10 @@ public class BlockInfo implements Serializable {
     private transient Multimap<String, VariableInfo> stagingVariables = MultimapBuilder.hashKeys().arrayListValues().build();
     @JsonIgnore
     private int parentOffset = -1;
+    @JsonIgnore
+    private ImmutableList<Integer> children = ImmutableList.of();
+    private int depth = 0;
+    private String path = null;
     private BlockType blockType = FileBlockType.UNKNOWN;
 
     @JsonProperty("blockType")
@@ -79,6 +83,41 @@ public class BlockInfo implements Serializable {
         this.parentOffset = parentOffset;
     }
 
+    /**
+     * Start offsets of the direct child blocks, in file order. Filled by {@link FileParser#buildBlocksTable()}.
+     *
+     * @return child block offsets
+     */
+    public ImmutableList<Integer> getChildren() {
+        return children;
+    }
+
+    public void setChildren(ImmutableList<Integer> children) {
+        this.children = children;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Position of the block in the tree, built from block types and the index among siblings of the same type,
+     * e.g. {@code PLAYER_INVENTORY[0]/PLAYER_INVENTORY_SACK[2]/PLAYER_INVENTORY_ITEMCONTAINER[0]/PLAYER_ITEM[5]}
+     *
+     * @return path of the block
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
     public ImmutableListMultimap<String, VariableInfo> getVariables() {
         return variables;
     }
@@ -122,6 +161,8 @@ public class BlockInfo implements Serializable {
                 ", variables=" + variables +
                 ", stagingVariables=" + stagingVariables +
                 ", parentOffset=" + parentOffset +
+                ", depth=" + depth +
+                ", path='" + path + '\'' +
                 ", blockType=" + blockType +
                 '}';
     }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package br.com.pinter.tqrespec.save;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of the buffers holding the content of the files, so the content of a character unloaded can be reused by the
+ * next one loaded. Buffers are grouped in power of two size classes and the memory kept by the pool is bounded.
+ * The buffers are heap buffers, the parsers and the converter access the content as an array.
+ * <p>
+ * A buffer must only be released by its owner, when no other reference to it is in use. Releasing is optional,
+ * a buffer not released is collected as any other.
+ */
+public final class BufferPool {
+    private static final int MIN_CLASS = 12;
+    private static final int MAX_CLASS = 24;
+    private static final long MAX_RETAINED = 32L << 20;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<byte[]>[] free = new ArrayDeque[MAX_CLASS + 1];
+    // arrays handed out and not released yet, arrays compare by identity; weak, releasing is optional
+    private static final Set<byte[]> acquired = Collections.newSetFromMap(new WeakHashMap<>());
+    private static long retained;
+
+    static {
+        for (int c = MIN_CLASS; c <= MAX_CLASS; c++) {
+            free[c] = new ArrayDeque<>();
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    /**
+     * Buffer with the capacity of size and little endian order. The content of a reused buffer isn't cleared.
+     */
+    public static ByteBuffer acquire(int size) {
+        int c = sizeClass(size);
+        if (c > MAX_CLASS) {
+            return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        byte[] array;
+        synchronized (acquired) {
+            array = free[c].poll();
+            if (array != null) {
+                retained -= array.length;
+            } else {
+                array = new byte[1 << c];
+            }
+            acquired.add(array);
+        }
+        return ByteBuffer.wrap(array, 0, size).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Buffer with the content read from the channel, from the current position until the end
+     */
+    public static ByteBuffer read(ReadableByteChannel channel, int size) throws IOException {
+        ByteBuffer buffer = acquire(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) <= 0) {
+                break;
+            }
+        }
+        // the file was truncated while read, keep the zeros expected from a new buffer
+        Arrays.fill(buffer.array(), buffer.position(), buffer.capacity(), (byte) 0);
+        return buffer.rewind();
+    }
+
+    /**
+     * Return the buffer to the pool. Buffers not acquired from the pool, and buffers already released, are ignored.
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasArray() || buffer.arrayOffset() != 0) {
+            return;
+        }
+        byte[] array = buffer.array();
+        synchronized (acquired) {
+            if (!acquired.remove(array) || retained + array.length > MAX_RETAINED) {
+                return;
+            }
+            free[sizeClass(array.length)].push(array);
+            retained += array.length;
+        }
+    }
+
+    static long getRetained() {
+        synchronized (acquired) {
+            return retained;
+        }
+    }
+
+    private static int sizeClass(int size) {
+        return Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+    }
+}
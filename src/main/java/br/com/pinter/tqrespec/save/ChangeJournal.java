@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import br.com.pinter.tqrespec.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Append-only journal of the changes staged for a file, used to recover the edits after a crash.
+ * <p>
+ * Each change is recorded when staged as (offset, previous length, new bytes), a removed change as a drop record.
+ * Recording a change only buffers it, the records are appended and forced to disk in batches by a background
+ * thread, at most {@link #SYNC_INTERVAL_MS} ms or {@link #SYNC_RECORDS} records after being recorded. A file
+ * replaced atomically needs no other record. Before a file that can't be
+ * replaced atomically is written the whole rendered content is appended and forced, so a write interrupted in the
+ * middle can be completed. A file patched in place records only the patched bytes. Records are checksummed, a torn record at the end is
+ * ignored. The journal is deleted when the file is written.
+ * <p>
+ * The journal is bound to the file it was opened for by the length and CRC32 of the original content, or of the
+ * content last written when the file was saved while still being edited. An interrupted write is completed by
+ * {@link #recover(Path, Path)}, staged changes never saved are only read back by {@link #previous()}, to be
+ * restored if the user asks for it.
+ */
+public final class ChangeJournal {
+    private static final System.Logger logger = Log.getLogger(ChangeJournal.class);
+    private static final int MAGIC = 0x4A525154; // TQRJ
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final byte PUT = 'P';
+    private static final byte DROP = 'D';
+    private static final byte WRITE = 'W';
+    private static final byte PATCH = 'A';
+    static final long SYNC_INTERVAL_MS = 250;
+    static final int SYNC_RECORDS = 512;
+
+    private static final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "journal-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path path;
+    private final ByteBuffer base;
+    // translates the changes of the loaded content to the base, null if the base is the loaded content
+    private final Rebase rebase;
+    // records not synced yet, guarded by pendingLock; the file is guarded by this
+    private final Object pendingLock = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int unsynced;
+    private boolean syncScheduled;
+    private volatile boolean disabled;
+    private FileChannel channel;
+
+    private ChangeJournal(Path path, ByteBuffer base, Rebase rebase) {
+        this.path = path;
+        this.base = base;
+        this.rebase = rebase;
+    }
+
+    /**
+     * Journal for the changes of a file. The journal file is only created when the first change is recorded.
+     *
+     * @param path journal file
+     * @param base original content of the file
+     */
+    public static ChangeJournal open(Path path, ByteBuffer base) {
+        return new ChangeJournal(path, base, null);
+    }
+
+    /**
+     * Journal for the changes of a file already written with a set of the changes. The changes are still recorded
+     * by offset of the loaded content, and are stored as changes of the written content.
+     *
+     * @param path     journal file
+     * @param original content the file was loaded from
+     * @param written  content the file was written with
+     * @param changes  changes by offset of the original content the file was written with
+     */
+    public static ChangeJournal open(Path path, ByteBuffer original, ByteBuffer written, Map<Integer, Pending> changes) {
+        return new ChangeJournal(path, written, new Rebase(original, changes));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Record the change staged at offset. The record is only buffered, it's written by the background sync.
+     */
+    public void put(int offset, int previousLength, byte[] data) {
+        record(offset, new Pending(previousLength, data));
+    }
+
+    /**
+     * Record that the change staged at offset was discarded
+     */
+    public void drop(int offset) {
+        record(offset, null);
+    }
+
+    private void record(int offset, Pending staged) {
+        if (disabled) {
+            return;
+        }
+        int at = offset;
+        Pending change = staged;
+        if (rebase != null) {
+            if (rebase.overlaps(offset, staged)) {
+                // the journal can't be replayed over the written content anymore
+                logger.log(WARNING, "Journal ''{0}'' disabled: change at {1} overlaps a change written", path, offset);
+                disabled = true;
+                syncExecutor.execute(this::discard);
+                return;
+            }
+            at = rebase.offset(offset);
+            change = rebase.change(offset, staged);
+        }
+        ByteBuffer record;
+        if (change == null) {
+            record = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN);
+            record.put(DROP).putInt(at);
+        } else {
+            record = ByteBuffer.allocate(13 + change.data().length).order(ByteOrder.LITTLE_ENDIAN);
+            record.put(PUT).putInt(at).putInt(change.previousLength()).putInt(change.data().length)
+                    .put(change.data());
+        }
+        append(record, false);
+    }
+
+    /**
+     * Record the complete content about to be written to the file, forcing it to disk before returning
+     */
+    public void beginWrite(byte[] content) {
+        beginWrite(new ByteBuffer[]{ByteBuffer.wrap(content)});
+    }
+
+    /**
+     * Record the complete content about to be written to the file, given as the sequence of spans to be written
+     */
+    public void beginWrite(ByteBuffer[] content) {
+        int length = 0;
+        for (ByteBuffer b : content) {
+            length += b.remaining();
+        }
+        ByteBuffer record = ByteBuffer.allocate(5 + length).order(ByteOrder.LITTLE_ENDIAN);
+        record.put(WRITE).putInt(length);
+        for (ByteBuffer b : content) {
+            record.put(b.duplicate());
+        }
+        append(record, true);
+    }
+
+    /**
+     * Record the bytes about to be written in place, forcing them to disk before returning. The record holds the
+     * length and CRC32 of the resulting content, so a patch interrupted in the middle can be completed.
+     *
+     * @param length  length of the file after the patch
+     * @param crc     CRC32 of the complete content of the file after the patch
+     * @param patches bytes to be written by offset, none of them change the length of the file
+     * @return true if the record is on disk, false if the journal is disabled
+     */
+    public boolean beginPatch(long length, int crc, Map<Integer, ByteBuffer> patches) {
+        int recordLength = 13;
+        for (ByteBuffer b : patches.values()) {
+            recordLength += 8 + b.remaining();
+        }
+        ByteBuffer record = ByteBuffer.allocate(recordLength).order(ByteOrder.LITTLE_ENDIAN);
+        record.put(PATCH).putInt((int) length).putInt(crc).putInt(patches.size());
+        for (Map.Entry<Integer, ByteBuffer> e : patches.entrySet()) {
+            record.putInt(e.getKey()).putInt(e.getValue().remaining()).put(e.getValue().duplicate());
+        }
+        append(record, true);
+        return !disabled;
+    }
+
+    /**
+     * Force pending records to disk, waiting for the background sync. Blocks, must not be called from the FX thread.
+     */
+    public void sync() {
+        try {
+            syncExecutor.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // runs on syncExecutor: records buffered meanwhile are written by the next flush
+    private synchronized void flush() {
+        byte[] records;
+        synchronized (pendingLock) {
+            syncScheduled = false;
+            if (unsynced == 0 || disabled) {
+                return;
+            }
+            records = pending.toByteArray();
+            pending.reset();
+            unsynced = 0;
+        }
+        try {
+            if (channel == null) {
+                create();
+            }
+            channel.write(ByteBuffer.wrap(records));
+            channel.force(false);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Close and delete the journal, the changes were written or abandoned
+     */
+    public synchronized void discard() {
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.log(WARNING, "Unable to delete journal ''{0}''", path);
+        }
+        synchronized (pendingLock) {
+            pending.reset();
+            unsynced = 0;
+            disabled = true;
+        }
+    }
+
+    /**
+     * Buffer the record and signal the background sync. A forced record waits for the sync.
+     */
+    private void append(ByteBuffer record, boolean force) {
+        if (disabled) {
+            return;
+        }
+        int length = record.position();
+        int crc = crc(record.array(), 0, length);
+        synchronized (pendingLock) {
+            pending.write(record.array(), 0, length);
+            pending.write(new byte[]{(byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24)}, 0, 4);
+            unsynced++;
+            if (!force && unsynced == SYNC_RECORDS) {
+                syncExecutor.execute(this::flush);
+            } else if (!force && !syncScheduled) {
+                syncScheduled = true;
+                syncExecutor.schedule(this::flush, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (force) {
+            sync();
+        }
+    }
+
+    private void create() throws IOException {
+        Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        byte[] content = new byte[base.capacity()];
+        base.get(0, content);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC).putInt(VERSION).putInt(content.length).putInt(crc(content, 0, content.length)).flip();
+        channel.write(header);
+        channel.force(true);
+    }
+
+    private void fail(IOException e) {
+        logger.log(WARNING, "Journal ''{0}'' disabled: {1}", path, e.getMessage());
+        synchronized (pendingLock) {
+            pending.reset();
+            disabled = true;
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+            // already failing
+        }
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Completes a write of the file interrupted in a previous run, or discards a journal that doesn't belong to the
+     * current content of the file.
+     * <ul>
+     *     <li>an interrupted write is completed if the file still has the original content or a part of the
+     *     content being written</li>
+     *     <li>an interrupted patch is completed if applying the patched bytes to the file gives the expected
+     *     content</li>
+     *     <li>staged changes never saved are left in the journal if the file still has the original content, they
+     *     are only applied if the user asks for it, see {@link #previous()}</li>
+     *     <li>otherwise the file was changed after the journal was written and the journal is deleted</li>
+     * </ul>
+     * The file is copied next to the journal before being replaced atomically, the journal is kept if the file
+     * can't be backed up or replaced.
+     *
+     * @return true if the file was updated from the journal
+     */
+    public static boolean recover(Path journal, Path file) throws IOException {
+        if (!Files.exists(journal)) {
+            return false;
+        }
+
+        byte[] current = Files.exists(file) ? Files.readAllBytes(file) : new byte[0];
+        Records records = read(Files.readAllBytes(journal));
+        if (records != null && records.isStaged() && records.isBase(current)) {
+            return false;
+        }
+        byte[] recovered = records != null ? complete(records, current) : null;
+        if (recovered == null) {
+            logger.log(INFO, "Journal ''{0}'' doesn''t match ''{1}'', discarding", journal, file);
+            Files.deleteIfExists(journal);
+            return false;
+        }
+
+        if (Files.exists(file)) {
+            Path backup = journal.resolveSibling(String.format("%s.%d.bak", journal.getFileName(),
+                    System.currentTimeMillis()));
+            Files.copy(file, backup, StandardCopyOption.COPY_ATTRIBUTES);
+            logger.log(INFO, "Backup of ''{0}'' created at ''{1}''", file, backup);
+        }
+        FileWriter.commit(file, new ByteBuffer[]{ByteBuffer.wrap(recovered)});
+        Files.deleteIfExists(journal);
+        logger.log(INFO, "Completed interrupted write of ''{0}'' from journal", file);
+        return true;
+    }
+
+    /**
+     * Changes staged and never saved in a previous run, left in the journal file when it was opened for the same
+     * original content. Must be called before any change is recorded, the first change recorded replaces the
+     * journal file.
+     *
+     * @return changes by offset, empty if there's none
+     */
+    public synchronized Map<Integer, Pending> previous() {
+        if (channel != null || disabled || !Files.exists(path)) {
+            return Map.of();
+        }
+        try {
+            Records records = read(Files.readAllBytes(path));
+            byte[] content = new byte[base.capacity()];
+            base.get(0, content);
+            if (records == null || !records.isStaged() || !records.isBase(content)) {
+                return Map.of();
+            }
+            return Collections.unmodifiableMap(records.changes());
+        } catch (IOException e) {
+            logger.log(WARNING, "Unable to read journal ''{0}''", path);
+            return Map.of();
+        }
+    }
+
+    /**
+     * Delete the journal left by a previous run, its changes were abandoned. Does nothing once a change was
+     * recorded by this journal.
+     */
+    public synchronized void dropPrevious() {
+        if (channel != null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.log(WARNING, "Unable to delete journal ''{0}''", path);
+        }
+    }
+
+    /**
+     * Change staged at an offset: replaces previousLength bytes of the original content by data
+     */
+    public record Pending(int previousLength, byte[] data) {
+    }
+
+    private record Patch(int length, int crc, Map<Integer, byte[]> data) {
+    }
+
+    /**
+     * Records of a journal, replayed: the staged changes left, and the last write or patch not completed
+     */
+    private record Records(int baseLength, int baseCrc, Map<Integer, Pending> changes, byte[] written,
+                           Patch patched) {
+        boolean isBase(byte[] content) {
+            return content.length == baseLength && crc(content, 0, content.length) == baseCrc;
+        }
+
+        boolean isStaged() {
+            return written == null && patched == null && !changes.isEmpty();
+        }
+    }
+
+    private static Patch readPatch(ByteBuffer journal) {
+        int length = journal.getInt();
+        int crc = journal.getInt();
+        int count = journal.getInt();
+        if (count < 0 || count > journal.remaining() / 8) {
+            return null;
+        }
+        Map<Integer, byte[]> data = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            int offset = journal.getInt();
+            byte[] bytes = readBytes(journal);
+            if (bytes == null) {
+                return null;
+            }
+            data.put(offset, bytes);
+        }
+        return new Patch(length, crc, data);
+    }
+
+    private static byte[] applyPatch(Patch patch, byte[] current) {
+        // the bytes patched before the interruption are rewritten with the same values
+        if (current.length != patch.length()) {
+            return null;
+        }
+        byte[] ret = current.clone();
+        for (Map.Entry<Integer, byte[]> e : patch.data().entrySet()) {
+            if (e.getKey() < 0 || e.getKey() + e.getValue().length > ret.length) {
+                return null;
+            }
+            System.arraycopy(e.getValue(), 0, ret, e.getKey(), e.getValue().length);
+        }
+        return crc(ret, 0, ret.length) == patch.crc() ? ret : null;
+    }
+
+    private static byte[] readBytes(ByteBuffer journal) {
+        int length = journal.getInt();
+        if (length < 0 || length > journal.remaining()) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        journal.get(data);
+        return data;
+    }
+
+    /**
+     * @return null if the journal has no valid header
+     */
+    private static Records read(byte[] content) {
+        ByteBuffer journal = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+        if (journal.remaining() < HEADER_SIZE || journal.getInt() != MAGIC || journal.getInt() != VERSION) {
+            return null;
+        }
+        int baseLength = journal.getInt();
+        int baseCrc = journal.getInt();
+
+        Map<Integer, Pending> changes = new TreeMap<>();
+        byte[] written = null;
+        Patch patched = null;
+
+        // stop at the first torn or corrupted record, everything after it wasn't synced
+        while (journal.remaining() > 4) {
+            int start = journal.position();
+            byte type = journal.get();
+            int offset = -1;
+            Pending pending = null;
+            Patch patch = null;
+            try {
+                if (type == PUT) {
+                    offset = journal.getInt();
+                    int previousLength = journal.getInt();
+                    byte[] data = readBytes(journal);
+                    pending = data != null ? new Pending(previousLength, data) : null;
+                } else if (type == DROP) {
+                    offset = journal.getInt();
+                } else if (type == WRITE) {
+                    byte[] data = readBytes(journal);
+                    pending = data != null ? new Pending(0, data) : null;
+                } else if (type == PATCH) {
+                    patch = readPatch(journal);
+                }
+                if ((type != DROP && type != PATCH && pending == null) || (type == PATCH && patch == null)
+                        || journal.remaining() < 4) {
+                    break;
+                }
+                int length = journal.position() - start;
+                if (journal.getInt() != crc(journal.array(), start, length)) {
+                    break;
+                }
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+
+            if (type == WRITE) {
+                written = pending.data();
+                patched = null;
+            } else if (type == PATCH) {
+                patched = patch;
+                written = null;
+            } else if (pending == null) {
+                changes.remove(offset);
+            } else {
+                changes.put(offset, pending);
+            }
+        }
+        return new Records(baseLength, baseCrc, changes, written, patched);
+    }
+
+    /**
+     * Content of the file after completing the interrupted write or patch
+     *
+     * @return null if there's nothing to complete, or the file doesn't match the journal
+     */
+    private static byte[] complete(Records records, byte[] current) {
+        if (records.patched() != null) {
+            return applyPatch(records.patched(), current);
+        }
+
+        byte[] written = records.written();
+        if (written == null) {
+            return null;
+        }
+        // the file may have been truncated by the interrupted write
+        boolean partial = current.length < written.length
+                && Arrays.equals(current, 0, current.length, written, 0, current.length);
+        return records.isBase(current) || partial ? written : null;
+    }
+}
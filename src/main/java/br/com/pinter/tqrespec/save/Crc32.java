@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package br.com.pinter.tqrespec.save;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * CRC32 as stored in the savegame files: same polynomial as {@link CRC32}, but with zero initial value and no final
+ * xor. Computed with {@link CRC32} and adjusted. The crc of two consecutive blocks of data can be combined from the
+ * crc of each block and the length of the second, without reading the data again.
+ */
+public final class Crc32 {
+    private static final int POLY = 0xEDB88320;
+    // x^(2^n) mod p
+    private static final int[] X2N = new int[32];
+
+    static {
+        int p = 1 << 30;
+        for (int n = 0; n < 32; n++) {
+            X2N[n] = p;
+            p = multModP(p, p);
+        }
+    }
+
+    private Crc32() {
+    }
+
+    /**
+     * crc of the bytes between position and limit of the buffer, the buffer is not changed
+     */
+    public static int of(ByteBuffer buffer) {
+        return update(0, buffer);
+    }
+
+    /**
+     * Continue the crc with the bytes between position and limit of the buffer, the buffer is not changed
+     */
+    public static int update(int crc, ByteBuffer buffer) {
+        CRC32 standard = new CRC32();
+        int length = buffer.remaining();
+        standard.update(buffer.duplicate());
+        return (int) standard.getValue() ^ ~0 ^ shift(~crc, length);
+    }
+
+    /**
+     * crc of the data of crc1 followed by the data of crc2
+     *
+     * @param length2 length of the data of crc2
+     */
+    public static int combine(int crc1, int crc2, long length2) {
+        return shift(crc1, length2) ^ crc2;
+    }
+
+    /**
+     * Converts between this crc and the standard CRC32 of the same data, the conversion is the same in both ways
+     */
+    public static int standard(int crc, long length) {
+        return crc ^ ~0 ^ shift(~0, length);
+    }
+
+    /**
+     * crc followed by length zero bytes
+     */
+    static int shift(int crc, long length) {
+        return multModP(x2nModP(length, 3), crc);
+    }
+
+    private static int multModP(int a, int b) {
+        int m = 1 << 31;
+        int p = 0;
+        while (true) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0) {
+                    break;
+                }
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ POLY : b >>> 1;
+        }
+        return p;
+    }
+
+    private static int x2nModP(long n, int k) {
+        int p = 1 << 31;
+        while (n != 0) {
+            if ((n & 1) != 0) {
+                p = multModP(X2N[k & 31], p);
+            }
+            n >>>= 1;
+            k++;
+        }
+        return p;
+    }
+
+    /**
+     * crc of every prefix of the content aligned to {@link #CHUNK} bytes, so the crc of any span of the content
+     * only reads the unaligned bytes at its ends.
+     */
+    public static final class Index {
+        static final int CHUNK = 4096;
+        private final ByteBuffer source;
+        private final ByteBuffer content;
+        private final int[] prefix;
+
+        public Index(ByteBuffer source) {
+            this.source = source;
+            this.content = source.duplicate().clear();
+            int chunks = content.capacity() / CHUNK;
+            prefix = new int[chunks + 1];
+            CRC32 standard = new CRC32();
+            for (int i = 1; i <= chunks; i++) {
+                standard.update(content.slice((i - 1) * CHUNK, CHUNK));
+                prefix[i] = standard((int) standard.getValue(), (long) i * CHUNK);
+            }
+        }
+
+        /**
+         * crc of the content between from (inclusive) and to (exclusive)
+         */
+        public int crc(int from, int to) {
+            int first = (from + CHUNK - 1) / CHUNK;
+            int last = to / CHUNK;
+            if (first >= last) {
+                return of(content.slice(from, to - from));
+            }
+            int start = first * CHUNK;
+            int end = last * CHUNK;
+            int head = of(content.slice(from, start - from));
+            int middle = prefix[last] ^ shift(prefix[first], (long) end - start);
+            int tail = of(content.slice(end, to - end));
+            return combine(combine(head, middle, (long) end - start), tail, (long) to - end);
+        }
+    }
+}
@@ -22,9 +22,8 @@ package br.com.pinter.tqrespec.save;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
 
-abstract class DataChange implements Serializable {
+abstract class DataChange implements DeepCloneable {
     private byte[] padding = new byte[0];
     private boolean paddingAfter = true;
 
@@ -36,6 +35,16 @@ abstract class DataChange implements Serializable {
 
     public abstract byte[] data();
 
+    public int dataLength() {
+        return data().length;
+    }
+
+    /**
+     * Called when the change is modified, to discard any rendered data
+     */
+    protected void invalidate() {
+    }
+
     public abstract int previousValueLength();
 
     public abstract int offset();
@@ -52,6 +61,7 @@ abstract class DataChange implements Serializable {
 
     public void setPadding(byte[] padding) {
         this.padding = padding;
+        invalidate();
     }
 
     public boolean isPaddingAfter() {
@@ -60,6 +70,7 @@ abstract class DataChange implements Serializable {
 
     public void setPaddingAfter(boolean paddingAfter) {
         this.paddingAfter = paddingAfter;
+        invalidate();
     }
 
     public void insertPadding(byte[] data, boolean before) {
@@ -73,6 +84,7 @@ abstract class DataChange implements Serializable {
                 bos.write(data);
             }
             padding = bos.toByteArray();
+            invalidate();
         } catch (IOException e) {
             throw new IllegalStateException("Error writing to buffer");
         }
@@ -27,14 +27,20 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
 class DataChangeVariable extends DataChange implements Serializable {
     private VariableInfo oldVariable;
     private final List<VariableInfo> variables = new ArrayList<>();
-    private final List<String> addVars = new ArrayList<>();
+    private final Set<String> addVars = new LinkedHashSet<>();
     private boolean remove = false;
+    // bytes rendered by data(), discarded when the variables or the padding change
+    private byte[] encoded;
 
     public DataChangeVariable(VariableInfo oldVariable, VariableInfo variable) {
         this.oldVariable = oldVariable;
@@ -63,14 +69,43 @@ class DataChangeVariable extends DataChange implements Serializable {
         return true;
     }
 
+    /**
+     * Bytes of this change. The bytes are rendered once and kept until the change is modified, the returned
+     * array must not be modified by the caller.
+     */
     @Override
     public byte[] data() {
+        byte[] ret = encoded;
+        if (ret == null) {
+            ret = data(UnaryOperator.identity());
+            encoded = ret;
+        }
+        return ret;
+    }
+
+    @Override
+    public int dataLength() {
+        return data().length;
+    }
+
+    @Override
+    protected void invalidate() {
+        encoded = null;
+    }
+
+    /**
+     * Bytes of this change, with each variable replaced by the result of the mapper before encoding.
+     *
+     * @param mapper function applied to each variable, used to write the change with converted values
+     */
+    byte[] data(UnaryOperator<VariableInfo> mapper) {
         try {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
             if (!isPaddingAfter())
                 bos.write(getPadding());
 
-            for (VariableInfo v : variables) {
+            for (VariableInfo variable : variables) {
+                VariableInfo v = mapper.apply(variable);
                 if (v.getValOffset() != oldVariable.getValOffset()) {
                     throw new IllegalArgumentException("invalid offset " + v);
                 }
@@ -93,8 +128,34 @@ class DataChangeVariable extends DataChange implements Serializable {
         }
     }
 
-    public List<String> getAddVars() {
-        return addVars;
+    public Set<String> getAddVars() {
+        return Collections.unmodifiableSet(addVars);
+    }
+
+    /**
+     * Mark the variable as inserted, the variable key will be written before its value
+     */
+    public void addVar(String name) {
+        addVars.add(name);
+        invalidate();
+    }
+
+    /**
+     * Add a variable to this change
+     *
+     * @param variable new data
+     * @param position -1 = before the current variables, 0 = replace them, 1 = after them
+     */
+    public void putVariable(VariableInfo variable, int position) {
+        if (position == -1) {
+            variables.addFirst(variable);
+        } else if (position == 0) {
+            variables.clear();
+            variables.add(variable);
+        } else if (position == 1) {
+            variables.add(variable);
+        }
+        invalidate();
     }
 
     @Override
@@ -127,7 +188,7 @@ class DataChangeVariable extends DataChange implements Serializable {
     }
 
     public List<VariableInfo> getVariables() {
-        return variables;
+        return Collections.unmodifiableList(variables);
     }
 
     public VariableInfo getOldVariable() {
@@ -136,6 +197,7 @@ class DataChangeVariable extends DataChange implements Serializable {
 
     public void setOldVariable(VariableInfo oldVariable) {
         this.oldVariable = oldVariable;
+        invalidate();
     }
 
     @Override
@@ -148,6 +210,15 @@ class DataChangeVariable extends DataChange implements Serializable {
         variables.clear();
         setPadding(new byte[0]);
         setPaddingAfter(true);
+        invalidate();
+    }
+
+    /**
+     * Whether this change only writes back the original value of the variable
+     */
+    public boolean isRestore() {
+        return !remove && addVars.isEmpty() && getPadding().length == 0 && variables.size() == 1
+                && oldVariable.getValOffset() != -1 && variables.getFirst().equals(oldVariable);
     }
 
     @Override
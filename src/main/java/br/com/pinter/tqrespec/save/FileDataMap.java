@@ -22,25 +22,38 @@ package br.com.pinter.tqrespec.save;
 
 import br.com.pinter.tqrespec.gui.ResourceHelper;
 import br.com.pinter.tqrespec.save.player.PlayerFileVariable;
-import br.com.pinter.tqrespec.tqdata.GameVersion;
+import com.google.common.collect.ImmutableListMultimap;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 @SuppressWarnings("SameParameterValue")
 public class FileDataMap implements DeepCloneable {
     private static final String ALERT_INVALIDDATA = "alert.changesinvaliddata";
     private static final String MULTIPLE_DEFINITIONS_ERROR = "Variable is defined on multiple locations, aborting";
     private static final String INVALID_DATA_TYPE = "Variable '%s' has an unexpected data type";
-    private final Map<Integer, DataChange> changes = new ConcurrentHashMap<>();
+    private volatile Map<Integer, DataChange> changes = new ConcurrentHashMap<>();
+    private transient volatile Batch batch;
+    private transient ReentrantLock batchLock;
+    private transient volatile UniqueIndex uniqueIndex;
+    private transient volatile BlockIndex blockIndex;
+    private transient volatile ChangeJournal journal;
+    private transient volatile ChangeListener changeListener;
     private Map<Integer, BlockInfo> blockInfo = new ConcurrentHashMap<>();
     private Map<String, List<Integer>> variableLocation = new ConcurrentHashMap<>();
+    private Map<String, List<VariableInfo>> variableAlias = new ConcurrentHashMap<>();
     private Platform platform = Platform.WINDOWS;
 
     @Override
@@ -63,6 +76,53 @@ public class FileDataMap implements DeepCloneable {
 
     public void setBlockInfo(Map<Integer, BlockInfo> blockInfo) {
         this.blockInfo = blockInfo;
+        uniqueIndex = null;
+        blockIndex = null;
+    }
+
+    /**
+     * Blocks of a type, in file order.
+     *
+     * @param blockType type of the blocks
+     * @return list of blocks, empty if none was found
+     */
+    public List<BlockInfo> getBlocks(BlockType blockType) {
+        return blockIndex().byType().getOrDefault(blockType, List.of());
+    }
+
+    public BlockInfo getFirstBlock(BlockType blockType) {
+        List<BlockInfo> blocks = getBlocks(blockType);
+        return blocks.isEmpty() ? null : blocks.getFirst();
+    }
+
+    /**
+     * Variables read from the block grouped by name, each group sorted by key offset. Built on first use and kept
+     * until the block table is replaced.
+     *
+     * @param block the block
+     * @return sorted view of the block variables
+     */
+    public ImmutableListMultimap<String, VariableInfo> getSortedVariables(BlockInfo block) {
+        return blockIndex().sortedVariables().computeIfAbsent(block.getStart(), k -> {
+            ImmutableListMultimap.Builder<String, VariableInfo> sorted = ImmutableListMultimap.builder();
+            sorted.orderValuesBy(Comparator.comparing(VariableInfo::getKeyOffset));
+            sorted.putAll(block.getVariables());
+            return sorted.build();
+        });
+    }
+
+    private BlockIndex blockIndex() {
+        BlockIndex index = blockIndex;
+        if (index == null) {
+            Map<BlockType, List<BlockInfo>> byType = new HashMap<>();
+            for (BlockInfo b : blockInfo.values().stream().sorted(Comparator.comparing(BlockInfo::getStart)).toList()) {
+                byType.computeIfAbsent(b.getBlockType(), k -> new ArrayList<>()).add(b);
+            }
+            byType.replaceAll((k, v) -> List.copyOf(v));
+            index = new BlockIndex(byType, new ConcurrentHashMap<>());
+            blockIndex = index;
+        }
+        return index;
     }
 
     public Map<String, List<Integer>> getVariableLocation() {
@@ -71,31 +131,402 @@ public class FileDataMap implements DeepCloneable {
 
     public void setVariableLocation(Map<String, List<Integer>> variableLocation) {
         this.variableLocation = variableLocation;
+        uniqueIndex = null;
+    }
+
+    public Map<String, List<VariableInfo>> getVariableAlias() {
+        return variableAlias;
+    }
+
+    public void setVariableAlias(Map<String, List<VariableInfo>> variableAlias) {
+        this.variableAlias = variableAlias;
+        uniqueIndex = null;
     }
 
     byte[] getBytes(Integer offset) {
-        if (changes.get(offset) != null) {
-            return changes.get(offset).data();
+        DataChange change = changes().get(offset);
+        if (change != null) {
+            return change.data();
         }
         return new byte[0];
     }
 
-    byte[] getBytes(VariableInfo variable) {
-        if (changes.get(variable.getValOffset()) != null) {
-            return changes.get(variable.getValOffset()).data();
+    int getDataLength(int offset) {
+        DataChange change = changes().get(offset);
+        if (change != null) {
+            return change.dataLength();
         }
-        return new byte[0];
+        return 0;
+    }
+
+    byte[] getBytes(VariableInfo variable) {
+        return getBytes(variable.getValOffset());
     }
 
     int getPreviousValueLength(int offset) {
-        if (changes.get(offset) != null) {
-            return changes.get(offset).previousValueLength();
+        DataChange change = changes().get(offset);
+        if (change != null) {
+            return change.previousValueLength();
         }
         throw new IllegalArgumentException("invalid offset");
     }
 
     Set<Integer> changesKeySet() {
-        return changes.keySet();
+        return changes().keySet();
+    }
+
+    DataChange getChange(int offset) {
+        return changes().get(offset);
+    }
+
+    /**
+     * Changes visible to the calling thread: the working copy of the open batch for its owner, the committed
+     * changes for everybody else.
+     */
+    private Map<Integer, DataChange> changes() {
+        Batch current = batch;
+        if (current != null && current.owner == Thread.currentThread()) {
+            return current.changes;
+        }
+        return changes;
+    }
+
+    /**
+     * Returns the change stored at offset, ready to be modified. Inside a batch the committed change is
+     * copied on first write, so readers on other threads never observe a half applied batch.
+     */
+    private DataChange mutableChange(int offset) {
+        Map<Integer, DataChange> current = changes();
+        DataChange change = current.get(offset);
+        Batch b = ownBatch();
+        if (change != null && b != null && b.owned.add(offset)) {
+            change = (DataChange) change.deepClone();
+            current.put(offset, change);
+        }
+        return change;
+    }
+
+    private void putChange(int offset, DataChange change) {
+        changes().put(offset, change);
+        Batch b = ownBatch();
+        if (b != null) {
+            b.owned.add(offset);
+        }
+    }
+
+    private void removeChange(int offset) {
+        changes().remove(offset);
+        changed(offset);
+    }
+
+    /**
+     * Keep the staged value of unique variables in sync with the change stored at offset. Changes of a batch
+     * are synced when the batch is committed.
+     */
+    private void changed(int offset) {
+        Batch b = ownBatch();
+        if (b != null) {
+            b.owned.add(offset);
+            return;
+        }
+        UniqueIndex index = uniqueIndex;
+        if (index != null) {
+            VariableHandle handle = index.byOffset().get(offset);
+            if (handle == null) {
+                handle = index.byKeyOffset().get(offset);
+            }
+            if (handle != null) {
+                stage(handle);
+            }
+        }
+        journal(offset);
+    }
+
+    /**
+     * Sync the staged value of a handle. Variables removed, or with variables inserted before them, are
+     * staged at their keyOffset and can't be represented by a single value.
+     */
+    private void stage(VariableHandle handle) {
+        VariableInfo variable = handle.getVariable();
+        if (changes.get(variable.getKeyOffset()) != null) {
+            handle.unresolve();
+        } else {
+            handle.stage(changes.get(variable.getValOffset()));
+        }
+    }
+
+    private void journal(int offset) {
+        ChangeListener listener = changeListener;
+        if (journal == null && listener == null) {
+            return;
+        }
+        DataChange change = changes.get(offset);
+        ChangeJournal.Pending staged = change != null
+                ? new ChangeJournal.Pending(change.previousValueLength(), change.data()) : null;
+        if (listener != null) {
+            listener.changed(offset, staged);
+        }
+        // read after the listener: a journal replaced while notified already has the change
+        ChangeJournal j = journal;
+        if (j != null) {
+            if (staged == null) {
+                j.drop(offset);
+            } else {
+                j.put(offset, staged.previousLength(), staged.data());
+            }
+        }
+    }
+
+    public ChangeJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Journal where the changes are recorded when staged, null to stop recording
+     */
+    public void setJournal(ChangeJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Notified of each change stored, with the bytes staged at the offset
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        /**
+         * @param change bytes staged at the offset, null if the change was dropped
+         */
+        void changed(int offset, ChangeJournal.Pending change);
+    }
+
+    /**
+     * Called from the thread staging a change after each change is stored, null to stop notifying. Must return
+     * quickly, changes are usually staged by the UI.
+     */
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Bytes of the changes staged, as seen by the calling thread. Should be called from the thread staging the
+     * changes, to get a consistent state.
+     */
+    public Map<Integer, ChangeJournal.Pending> getStagedChanges() {
+        Map<Integer, ChangeJournal.Pending> staged = new HashMap<>();
+        changes().forEach((offset, change) ->
+                staged.put(offset, new ChangeJournal.Pending(change.previousValueLength(), change.data())));
+        return staged;
+    }
+
+    /**
+     * Copy of the parsed data with only the changes given staged, as raw bytes. The copy shares the parsed data
+     * with this map and is meant to be rendered from another thread while this map is still being edited.
+     *
+     * @param staged changes by offset, see {@link #getStagedChanges()}
+     */
+    public FileDataMap withChanges(Map<Integer, ChangeJournal.Pending> staged) {
+        FileDataMap copy = new FileDataMap();
+        copy.blockInfo = blockInfo;
+        copy.variableLocation = variableLocation;
+        copy.variableAlias = variableAlias;
+        copy.platform = platform;
+        staged.forEach((offset, change) ->
+                copy.changes.put(offset, new DataChangeRaw(offset, change.data(), change.previousLength())));
+        return copy;
+    }
+
+    /**
+     * Changes to write to a file already written with a set of the changes staged: each change staged that
+     * differs from the written one, and the bytes loaded for each written change reverted since. Like
+     * {@link #withChanges(Map)}, the changes are raw bytes, but the offsets are of the written content.
+     *
+     * @param original content the changes were staged on
+     * @param written  changes by offset of the original content the file was written with
+     * @param staged   changes by offset of the original content staged now
+     * @return null if a change staged replaces bytes of a written change other than the ones it replaced, the file
+     * must be rendered from the original content then
+     */
+    public static FileDataMap rebase(ByteBuffer original, Map<Integer, ChangeJournal.Pending> written,
+                                     Map<Integer, ChangeJournal.Pending> staged) {
+        Rebase rebase = new Rebase(original, written);
+        Set<Integer> offsets = new HashSet<>(staged.keySet());
+        offsets.addAll(written.keySet());
+        FileDataMap ret = new FileDataMap();
+        for (int offset : offsets) {
+            ChangeJournal.Pending change = staged.get(offset);
+            if (rebase.overlaps(offset, change)) {
+                return null;
+            }
+            change = rebase.change(offset, change);
+            if (change != null) {
+                int at = rebase.offset(offset);
+                ret.changes.put(at, new DataChangeRaw(at, change.data(), change.previousLength()));
+            }
+        }
+        return ret;
+    }
+
+    private UniqueIndex uniqueIndex() {
+        UniqueIndex index = uniqueIndex;
+        if (index == null) {
+            index = buildUniqueIndex();
+            uniqueIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Index of the variables defined once in the file, with the value currently staged for each one.
+     */
+    private UniqueIndex buildUniqueIndex() {
+        Map<String, VariableHandle> byName = new HashMap<>();
+        Map<Integer, VariableHandle> byOffset = new ConcurrentHashMap<>();
+        Map<Integer, VariableHandle> byKeyOffset = new ConcurrentHashMap<>();
+        UniqueIndex index = new UniqueIndex(byName, byOffset, byKeyOffset, new ConcurrentHashMap<>());
+        for (Map.Entry<String, List<Integer>> e : variableLocation.entrySet()) {
+            if (e.getValue().size() != 1) {
+                continue;
+            }
+            BlockInfo block = blockInfo.get(e.getValue().getFirst());
+            if (block == null || block.getVariables().get(e.getKey()).size() != 1) {
+                continue;
+            }
+            VariableHandle unique = new VariableHandle(index, block.getVariables().get(e.getKey()).getFirst());
+            stage(unique);
+            byName.put(e.getKey(), unique);
+            byOffset.put(unique.getVariable().getValOffset(), unique);
+            byKeyOffset.put(unique.getVariable().getKeyOffset(), unique);
+        }
+        return index;
+    }
+
+    /**
+     * Current value of a variable: the staged one if changed, otherwise the one read from file.
+     * Unique variables are resolved with a single lookup.
+     */
+    private VariableInfo current(String variable) {
+        if (ownBatch() == null) {
+            VariableHandle unique = uniqueIndex().byName().get(variable);
+            if (unique != null && unique.isResolved()) {
+                return unique.current();
+            }
+        }
+        VariableInfo v = getFirst(variable);
+        if (v != null && hasChange(v)) {
+            return getFirstChange(v);
+        }
+        return v;
+    }
+
+    private Batch ownBatch() {
+        Batch current = batch;
+        if (current != null && current.owner == Thread.currentThread()) {
+            return current;
+        }
+        return null;
+    }
+
+    private synchronized ReentrantLock getBatchLock() {
+        if (batchLock == null) {
+            // transient, lost during deepClone
+            batchLock = new ReentrantLock();
+        }
+        return batchLock;
+    }
+
+    /**
+     * Run a batch of changes as a single transaction. The batch sees its own changes, other threads only see
+     * them after all operations succeeded. If the batch throws, the map is left untouched.
+     *
+     * @param operations changes to apply, receives this map
+     */
+    public void edit(Consumer<FileDataMap> operations) {
+        begin();
+        boolean committed = false;
+        try {
+            operations.accept(this);
+            commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                rollback();
+            }
+        }
+    }
+
+    /**
+     * Open a batch owned by the calling thread. Batches opened by the owner while a batch is active are joined
+     * to the outer batch, a batch opened by another thread waits for the current one to finish.
+     */
+    public void begin() {
+        getBatchLock().lock();
+        Batch current = ownBatch();
+        if (current != null) {
+            current.depth++;
+            return;
+        }
+        batch = new Batch(Thread.currentThread(), new ConcurrentHashMap<>(changes));
+    }
+
+    /**
+     * Publish the changes of the batch. Only the outermost commit publishes, nested commits just close
+     * their level. Only the offsets touched by the batch are merged, changes staged by other threads
+     * meanwhile are kept. The merged changes replace the committed ones at once, readers see the whole batch
+     * or none of it.
+     */
+    public void commit() {
+        Batch current = ownBatch();
+        if (current == null) {
+            throw new IllegalStateException("no batch in progress");
+        }
+        if (current.depth > 0) {
+            current.depth--;
+        } else {
+            Map<Integer, DataChange> merged = new ConcurrentHashMap<>(changes);
+            for (int offset : current.owned) {
+                DataChange change = current.changes.get(offset);
+                if (change == null) {
+                    merged.remove(offset);
+                } else {
+                    merged.put(offset, change);
+                }
+            }
+            changes = merged;
+            batch = null;
+            current.owned.forEach(this::changed);
+        }
+        getBatchLock().unlock();
+    }
+
+    /**
+     * Discard the batch owned by the calling thread, including any nested level. Does nothing if the thread
+     * doesn't own a batch.
+     */
+    public void rollback() {
+        Batch current = ownBatch();
+        if (current == null) {
+            return;
+        }
+        batch = null;
+        for (Runnable undo : current.undo.reversed()) {
+            undo.run();
+        }
+        ReentrantLock lock = getBatchLock();
+        while (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether there's any change to be written. Changes restoring the original values are discarded when
+     * stored, so a map edited back to its original state isn't dirty.
+     */
+    public boolean isDirty() {
+        return !changes().isEmpty();
+    }
+
+    public boolean isBatchInProgress() {
+        return ownBatch() != null;
     }
 
     public Platform getPlatform() {
@@ -110,6 +541,116 @@ public class FileDataMap implements DeepCloneable {
         blockInfo.clear();
         changes.clear();
         variableLocation.clear();
+        variableAlias.clear();
+        uniqueIndex = null;
+        blockIndex = null;
+        ChangeJournal j = journal;
+        if (j != null) {
+            // pending changes were abandoned
+            j.discard();
+            journal = null;
+        }
+    }
+
+    /**
+     * Stage again the changes of a previous run recovered from the journal, all of them or none. Only values
+     * replaced in place can be restored: each change must replace the whole value of a variable read from the
+     * file.
+     *
+     * @param recovered changes by offset, see {@link ChangeJournal#previous()}
+     * @return false if the map already has changes or any change can't be restored, nothing is staged then
+     */
+    public boolean restore(Map<Integer, ChangeJournal.Pending> recovered) {
+        if (isDirty()) {
+            return false;
+        }
+        Map<Integer, VariableInfo> variables = new HashMap<>();
+        for (BlockInfo block : blockInfo.values()) {
+            for (VariableInfo variable : block.getVariables().values()) {
+                if (recovered.containsKey(variable.getValOffset())) {
+                    variables.put(variable.getValOffset(), variable);
+                }
+            }
+        }
+
+        Map<Integer, VariableInfo> restored = new HashMap<>();
+        for (Map.Entry<Integer, ChangeJournal.Pending> e : recovered.entrySet()) {
+            VariableInfo variable = variables.get(e.getKey());
+            if (variable == null
+                    || e.getValue().previousLength() != variable.getValuePrefix() + variable.getValBytesLength()) {
+                return false;
+            }
+            VariableInfo newVar = decode(variable, e.getValue().data());
+            if (newVar == null) {
+                return false;
+            }
+            restored.put(e.getKey(), newVar);
+        }
+        edit(tx -> restored.forEach((offset, newVar) -> storeChange(variables.get(offset), newVar)));
+        return true;
+    }
+
+    /**
+     * Copy of the variable with the value encoded in data
+     *
+     * @return null if the data isn't a value of the type of the variable
+     */
+    private static VariableInfo decode(VariableInfo variable, byte[] data) {
+        VariableInfo.Builder builder = withValue(variable);
+        ByteBuffer value = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        if ((variable.isInt() || variable.isFloat() || variable.isUid())
+                && data.length != variable.getVariableType().dataTypeSize()) {
+            return null;
+        }
+        if (variable.isInt()) {
+            builder.value(value.getInt());
+        } else if (variable.isFloat()) {
+            builder.value(value.getFloat());
+        } else if (variable.isUid()) {
+            builder.value(data.clone());
+        } else if (variable.isString()) {
+            String s = StringEncoder.decode(data, variable.getVariableType());
+            if (s == null) {
+                return null;
+            }
+            builder.value(s).valSize(s.length());
+        } else {
+            return null;
+        }
+        VariableInfo newVar = builder.build();
+        return Arrays.equals(newVar.bytes(), data) ? newVar : null;
+    }
+
+    private VariableInfo resolveFirst(String variable) {
+        Batch b = ownBatch();
+        if (b != null && b.resolved.containsKey(variable)) {
+            return b.resolved.get(variable);
+        }
+        VariableHandle unique = uniqueIndex().byName().get(variable);
+        if (unique != null) {
+            return unique.getVariable();
+        }
+        assertMultipleDefinitions(variable);
+        VariableInfo variableInfo = getFirst(variable);
+        if (b != null) {
+            b.resolved.put(variable, variableInfo);
+        }
+        return variableInfo;
+    }
+
+    /**
+     * Copy of the variable to receive a new value. Inside a batch the value already staged by the batch is
+     * reused instead of cloning the variable again.
+     */
+    private VariableInfo stagedCopy(VariableInfo variable) {
+        if (ownBatch() != null && hasChange(variable)
+                && mutableChange(variable.getValOffset()) instanceof DataChangeVariable dt) {
+            VariableInfo staged = dt.getVariable(variable);
+            if (staged != null) {
+                return staged;
+            }
+        }
+        return (VariableInfo) variable.deepClone();
     }
 
     private int searchFirstVariable(String variable) {
@@ -129,7 +670,8 @@ public class FileDataMap implements DeepCloneable {
     }
 
     private void assertMultipleDefinitions(String variable) {
-        if (getVariableLocation().get(variable).size() > 1) {
+        List<Integer> locations = getVariableLocation().get(variable);
+        if (locations != null && locations.size() > 1) {
             throw new IllegalStateException(MULTIPLE_DEFINITIONS_ERROR);
         }
     }
@@ -168,38 +710,36 @@ public class FileDataMap implements DeepCloneable {
         }
 
 
-        if (changes.get(offset) == null) {
+        if (changes().get(offset) == null) {
             DataChangeVariable changeVariable = new DataChangeVariable(oldVar, newVar);
             if (creating) {
-                changeVariable.getAddVars().add(newVar.getName());
+                changeVariable.addVar(newVar.getName());
             }
-            changes.put(offset, changeVariable);
+            putChange(offset, changeVariable);
         } else {
-            if (changes.get(offset).isVariable()) {
-                DataChangeVariable current = (DataChangeVariable) changes.get(offset);
+            if (changes().get(offset).isVariable()) {
+                DataChangeVariable current = (DataChangeVariable) mutableChange(offset);
                 if (creating) {
-                    current.getAddVars().add(newVar.getName());
+                    current.addVar(newVar.getName());
                 }
 
-                if (position == -1) {
-                    current.getVariables().addFirst(newVar);
-                } else if (position == 0) {
-                    current.getVariables().clear();
-                    current.getVariables().add(newVar);
-                } else if (position == 1) {
-                    current.getVariables().add(newVar);
-                }
+                current.putVariable(newVar, position);
             } else {
                 DataChangeVariable changeVariable = new DataChangeVariable(oldVar, newVar);
                 if (creating) {
-                    changeVariable.getAddVars().add(newVar.getName());
+                    changeVariable.addVar(newVar.getName());
                 }
 
-                changeVariable.insertPadding(changes.get(offset).data(), position != -1);
-                changes.put(offset, changeVariable);
+                changeVariable.insertPadding(changes().get(offset).data(), position != -1);
+                putChange(offset, changeVariable);
             }
         }
 
+        // the variable is back to the value read from the file, nothing left to write
+        if (changes().get(offset) instanceof DataChangeVariable dt && dt.isRestore()) {
+            changes().remove(offset);
+        }
+        changed(offset);
     }
 
     /**
@@ -213,17 +753,15 @@ public class FileDataMap implements DeepCloneable {
      *                 1 = after
      */
     private void storeChange(int offset, byte[] newData, int previousLength, int position) {
-        if (changes.get(offset) != null && newData.length == 0) {
-            int previous = changes.get(offset).previousValueLength();
-            changes.put(offset, new DataChangeRaw(offset, newData, previous));
-            return;
-        }
-
-        if (changes.get(offset) == null) {
-            changes.put(offset, new DataChangeRaw(offset, newData, previousLength));
+        if (changes().get(offset) != null && newData.length == 0) {
+            int previous = changes().get(offset).previousValueLength();
+            putChange(offset, new DataChangeRaw(offset, newData, previous));
+        } else if (changes().get(offset) == null) {
+            putChange(offset, new DataChangeRaw(offset, newData, previousLength));
         } else {
-            changes.get(offset).insertPadding(newData, position != -1);
+            mutableChange(offset).insertPadding(newData, position != -1);
         }
+        changed(offset);
     }
 
     /**
@@ -236,27 +774,29 @@ public class FileDataMap implements DeepCloneable {
      *                 1 = after
      */
     private void storeChange(VariableInfo variable, int position) {
-        if (changes.get(variable.getKeyOffset()) != null) {
-            DataChangeVariable dataChange = (DataChangeVariable) changes.get(variable.getKeyOffset());
+        if (changes().get(variable.getKeyOffset()) != null) {
+            DataChangeVariable dataChange = (DataChangeVariable) mutableChange(variable.getKeyOffset());
             if (dataChange.getOldVariable() == null || dataChange.getOldVariable().getVariableType() == VariableType.UNKNOWN) {
                 dataChange.setOldVariable(variable);
             }
             dataChange.setRemove(true);
         } else {
-            changes.put(variable.getKeyOffset(), new DataChangeVariable(variable, null));
+            putChange(variable.getKeyOffset(), new DataChangeVariable(variable, null));
         }
+        changed(variable.getKeyOffset());
     }
 
     public boolean isRemoved(int offset) {
-        return changes.get(offset) != null && changes.get(offset).isEmpty();
+        DataChange change = changes().get(offset);
+        return change != null && change.isEmpty();
     }
 
     private boolean hasChange(VariableInfo variable) {
-        return changes.get(variable.getValOffset()) != null;
+        return changes().get(variable.getValOffset()) != null;
     }
 
     private VariableInfo getFirstChange(VariableInfo variable) {
-        DataChangeVariable dataChange = (DataChangeVariable) changes.get(variable.getValOffset());
+        DataChangeVariable dataChange = (DataChangeVariable) changes().get(variable.getValOffset());
         return dataChange.getVariable(variable);
     }
 
@@ -268,6 +808,10 @@ public class FileDataMap implements DeepCloneable {
     }
 
     private VariableInfo getFirst(String variable) {
+        VariableHandle unique = uniqueIndex().byName().get(variable);
+        if (unique != null) {
+            return unique.getVariable();
+        }
         int block = searchFirstVariable(variable);
         if (block >= 0) {
             return getBlockInfo().get(block).getVariables().get(variable).getFirst();
@@ -298,100 +842,6 @@ public class FileDataMap implements DeepCloneable {
         });
     }
 
-    private void convertWindowsToMobile(String saveId) {
-        BlockInfo myPlayerNameBlock = this.blockInfo.get(variableLocation.get("myPlayerName").getFirst());
-        int myPlayerNameKeyOffset = myPlayerNameBlock.getVariables().get("myPlayerName").getFirst().getKeyOffset();
-        VariableInfo variableInfo = VariableInfo.builder().name("mySaveId")
-                .blockOffset(myPlayerNameBlock.getStart())
-                .keyOffset(myPlayerNameKeyOffset)
-                .variableType(VariableType.STRING)
-                .value(saveId).build();
-
-        insertVariable(variableInfo);
-        for (VariableInfo v :
-                getBlockInfo().values().stream().flatMap(b -> b.getVariables().values().stream()).toList()) {
-            BlockInfo currentBlock = blockInfo.get(v.getBlockOffset());
-            BlockType currentBlockType = currentBlock.getBlockType();
-            PlayerFileVariable playerVar = PlayerFileVariable.getVar(Platform.WINDOWS, v.getName());
-
-            if (v.getVariableType().equals(VariableType.STRING_UTF_16_LE)) {
-                if (v.getValSize() == 0)
-                    continue;
-
-                VariableInfo newVar = (VariableInfo) v.deepClone();
-                if (hasChange(v)) {
-                    newVar = getFirstChange(v);
-                }
-                newVar.setVariableType(VariableType.STRING_UTF_32_LE);
-                storeChange(v, newVar);
-            } else if ((playerVar.variable().equals("boostedCharacterForX4") && playerVar.location().equals(currentBlockType))
-                    || (playerVar.variable().equals("tartarusDefeatedCount[i]") && playerVar.location().equals(currentBlockType))
-                    || (playerVar.variable().equals("hasSkillServices") && playerVar.location().equals(currentBlockType))
-                    || (playerVar.variable().equals("version") && playerVar.location().equals(currentBlockType))) {
-                removeVariable(v);
-            } else if (v.getName().equals("playerVersion") && getInt("playerVersion") > 5) {
-                VariableInfo newVar = (VariableInfo) v.deepClone();
-                if (hasChange(v)) {
-                    newVar = getFirstChange(v);
-                }
-                newVar.setValue(5);
-                storeChange(v, newVar);
-            }
-        }
-    }
-
-    private void convertMobileToWindows() {
-        BlockInfo numberOfSacksBlock = this.blockInfo.get(variableLocation.get("numberOfSacks").getFirst());
-        VariableInfo numberOfSacks = numberOfSacksBlock.getVariables().get("numberOfSacks").getFirst();
-
-        for (VariableInfo v : getBlockInfo().get(numberOfSacksBlock.getStart()).getVariables().values().stream().toList()) {
-            if ((Integer) numberOfSacks.getValue() > 1 &&
-                    (v.getName().equals("currentlyFocusedSackNumber") || v.getName().equals("currentlySelectedSackNumber"))) {
-                setInt(v, 1);
-            }
-        }
-
-        for (VariableInfo v :
-                getBlockInfo().values().stream().flatMap(b -> b.getVariables().values().stream()).toList()) {
-            if (v.getName().equals("mySaveId") || v.getName().equals("currentDifficulty")) {
-                removeVariable(v);
-            } else if (v.getName().equals("headerVersion")) {
-                VariableInfo newVar = (VariableInfo) v.deepClone();
-                if (hasChange(v)) {
-                    newVar = getFirstChange(v);
-                }
-                newVar.setValue(GameVersion.TQAE.value());
-                storeChange(v, newVar);
-            } else {
-                if (v.getVariableType().equals(VariableType.STRING_UTF_32_LE)) {
-                    if (v.getValSize() == 0)
-                        continue;
-
-                    VariableInfo newVar = (VariableInfo) v.deepClone();
-                    if (hasChange(v)) {
-                        newVar = getFirstChange(v);
-                    }
-                    newVar.setVariableType(VariableType.STRING_UTF_16_LE);
-                    storeChange(v, newVar);
-                }
-            }
-        }
-    }
-
-    public void convertTo(Platform target, String saveId) {
-        Platform currentPlatform = platform;
-        platform = target;
-        if (currentPlatform.equals(target)) {
-            throw new IllegalStateException("can't convert to same platform");
-        }
-
-        if (currentPlatform.equals(Platform.WINDOWS) && target.equals(Platform.MOBILE)) {
-            convertWindowsToMobile(saveId);
-        } else if (currentPlatform.equals(Platform.MOBILE) && target.equals(Platform.WINDOWS)) {
-            convertMobileToWindows();
-        }
-    }
-
     public String getCharacterName() {
         return getString("myPlayerName");
     }
@@ -415,11 +865,9 @@ public class FileDataMap implements DeepCloneable {
     }
 
     public void setString(String variable, String value) {
-        assertMultipleDefinitions(variable);
-
-        VariableInfo variableInfo = getFirst(variable);
+        VariableInfo variableInfo = resolveFirst(variable);
         if (variableInfo != null && variableInfo.isString()) {
-            VariableInfo newVar = (VariableInfo) variableInfo.deepClone();
+            VariableInfo newVar = stagedCopy(variableInfo);
             newVar.setValue(value);
             storeChange(variableInfo, newVar);
         } else {
@@ -430,7 +878,7 @@ public class FileDataMap implements DeepCloneable {
     public void setString(VariableInfo variable, String value) {
         if (getBlockInfo().get(variable.getBlockOffset()) != null) {
             if (variable.isString()) {
-                VariableInfo newVar = (VariableInfo) variable.deepClone();
+                VariableInfo newVar = stagedCopy(variable);
                 newVar.setValue(value);
                 storeChange(variable, newVar);
             } else {
@@ -442,15 +890,14 @@ public class FileDataMap implements DeepCloneable {
     }
 
     public void setFloat(String variable, float value) {
-        assertMultipleDefinitions(variable);
-        VariableInfo variableInfo = getFirst(variable);
+        VariableInfo variableInfo = resolveFirst(variable);
 
         if (variableInfo == null) {
             throw new IllegalArgumentException(ResourceHelper.getMessage(ALERT_INVALIDDATA, variable));
         }
 
         if (variableInfo.isFloat()) {
-            VariableInfo newVar = (VariableInfo) variableInfo.deepClone();
+            VariableInfo newVar = stagedCopy(variableInfo);
             newVar.setValue(value);
             storeChange(variableInfo, newVar);
         } else {
@@ -458,11 +905,11 @@ public class FileDataMap implements DeepCloneable {
         }
     }
 
-    private void setFloat(VariableInfo variable, int value) {
+    private void setFloat(VariableInfo variable, float value) {
         if (getBlockInfo().get(variable.getBlockOffset()) != null) {
             if (variable.isFloat()) {
-                VariableInfo newVar = (VariableInfo) variable.deepClone();
-                newVar.setValue((float) value);
+                VariableInfo newVar = stagedCopy(variable);
+                newVar.setValue(value);
                 storeChange(variable, newVar);
             } else {
                 throw new NumberFormatException(String.format(INVALID_DATA_TYPE, variable));
@@ -473,14 +920,9 @@ public class FileDataMap implements DeepCloneable {
     }
 
     public Float getFloat(String variable) {
-        VariableInfo v = getFirst(variable);
+        VariableInfo v = current(variable);
         if (v != null && v.isFloat()) {
-            if (hasChange(v)) {
-                VariableInfo c = getFirstChange(v);
-                return (Float) c.getValue();
-            } else {
-                return (Float) v.getValue();
-            }
+            return (Float) v.getValue();
         }
 
         throw new IllegalStateException("invalid variable: " + variable);
@@ -497,7 +939,7 @@ public class FileDataMap implements DeepCloneable {
             }
 
             if (variableInfo.isInt()) {
-                VariableInfo newVar = (VariableInfo) variableInfo.deepClone();
+                VariableInfo newVar = stagedCopy(variableInfo);
                 newVar.setValue(value);
                 storeChange(variableInfo, newVar);
             } else {
@@ -508,15 +950,14 @@ public class FileDataMap implements DeepCloneable {
     }
 
     public void setInt(String variable, int value) {
-        assertMultipleDefinitions(variable);
-        VariableInfo variableInfo = getFirst(variable);
+        VariableInfo variableInfo = resolveFirst(variable);
 
         if (variableInfo == null) {
             throw new IllegalArgumentException(ResourceHelper.getMessage(ALERT_INVALIDDATA, variable));
         }
 
         if (variableInfo.isInt()) {
-            VariableInfo newVar = (VariableInfo) variableInfo.deepClone();
+            VariableInfo newVar = stagedCopy(variableInfo);
             newVar.setValue(value);
             storeChange(variableInfo, newVar);
         } else {
@@ -525,35 +966,17 @@ public class FileDataMap implements DeepCloneable {
     }
 
     public void incrementInt(VariableInfo variable) {
-        int value = (int) variable.getValue();
-        if (hasChange(variable)) {
-            byte[] currentData = getBytes(variable);
-            int currentValue = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).put(currentData).rewind().getInt();
-            value = currentValue + 1;
-        } else {
-            value++;
-        }
-
-        setInt(variable, value);
+        setInt(variable, getInt(variable) + 1);
     }
 
     public void decrementInt(VariableInfo variable) {
-        int value = (int) variable.getValue();
-        if (hasChange(variable)) {
-            byte[] currentData = getBytes(variable);
-            int currentValue = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).put(currentData).rewind().getInt();
-            value = currentValue - 1;
-        } else {
-            value++;
-        }
-
-        setInt(variable, value);
+        setInt(variable, getInt(variable) - 1);
     }
 
     public void setInt(VariableInfo variable, int value) {
         if (getBlockInfo().get(variable.getBlockOffset()) != null) {
             if (variable.isInt()) {
-                VariableInfo newVar = (VariableInfo) variable.deepClone();
+                VariableInfo newVar = stagedCopy(variable);
                 newVar.setValue(value);
                 storeChange(variable, newVar);
             } else {
@@ -607,14 +1030,9 @@ public class FileDataMap implements DeepCloneable {
     }
 
     public Integer getInt(String variable) {
-        VariableInfo v = getFirst(variable);
+        VariableInfo v = current(variable);
         if (v != null && v.isInt()) {
-            if (hasChange(v)) {
-                VariableInfo c = getFirstChange(v);
-                return (Integer) c.getValue();
-            } else {
-                return (Integer) v.getValue();
-            }
+            return (Integer) v.getValue();
         }
 
         throw new IllegalStateException("invalid variable: " + variable);
@@ -663,7 +1081,7 @@ public class FileDataMap implements DeepCloneable {
         // and nothing should be changed
         for (VariableInfo v : current.getVariables().values()) {
             if (hasChange(v)) {
-                changes.remove(v.getValOffset());
+                removeChange(v.getValOffset());
             }
         }
         storeChange(current.getStart(), new byte[0], current.getSize(), -1);
@@ -682,11 +1100,12 @@ public class FileDataMap implements DeepCloneable {
     }
 
     public boolean isVariableRemoved(VariableInfo variable) {
-        if (changes.get(variable.getKeyOffset()) != null) {
-            if (changes.get(variable.getKeyOffset()) instanceof DataChangeVariable dt) {
+        DataChange change = changes().get(variable.getKeyOffset());
+        if (change != null) {
+            if (change instanceof DataChangeVariable dt) {
                 return dt.isRemove();
             } else {
-                return changes.get(variable.getKeyOffset()) != null && changes.get(variable.getKeyOffset()).isRemove();
+                return change.isRemove();
             }
         }
         return false;
@@ -694,10 +1113,12 @@ public class FileDataMap implements DeepCloneable {
 
     public void removeVariable(VariableInfo variable) {
         // remove variables from staging hashmap
-        if (changes.get(variable.getKeyOffset()) instanceof DataChangeVariable dt
+        if (changes().get(variable.getKeyOffset()) instanceof DataChangeVariable dt
                 && dt.isRemove() && dt.getVariables().isEmpty()) {
             BlockInfo block = getBlockInfo().get(variable.getBlockOffset());
-            block.getStagingVariables().remove(variable.getName(), variable);
+            if (block.getStagingVariables().remove(variable.getName(), variable)) {
+                undoOnRollback(() -> block.getStagingVariables().put(variable.getName(), variable));
+            }
         }
         storeChange(variable, -1);
     }
@@ -712,9 +1133,22 @@ public class FileDataMap implements DeepCloneable {
         // add variables to staging hashmap, to represent the
         // pending byte changes stored by the method storeChange
         block.getStagingVariables().put(variable.getName(), variable);
+        undoOnRollback(() -> block.getStagingVariables().remove(variable.getName(), variable));
+    }
+
+    private void undoOnRollback(Runnable undo) {
+        Batch b = ownBatch();
+        if (b != null) {
+            b.undo.add(undo);
+        }
     }
 
     List<VariableInfo> getTempVariableInfo(String variable) {
+        if (!variableAlias.isEmpty()) {
+            return variableAlias.getOrDefault(variable, List.of());
+        }
+
+        // alias index not provided by the parser, search the temp blocks
         List<Integer> temp = variableLocation.get("temp") != null ? variableLocation.get("temp") : List.of();
 
         for (Integer blockStart : temp) {
@@ -756,4 +1190,202 @@ public class FileDataMap implements DeepCloneable {
             throw new IllegalArgumentException(String.format("attribute not found %s", attr));
         }
     }
+
+    private static final class Batch {
+        private final Thread owner;
+        private final Map<Integer, DataChange> changes;
+        private final Set<Integer> owned = new HashSet<>();
+        private final Map<String, VariableInfo> resolved = new HashMap<>();
+        private final List<Runnable> undo = new ArrayList<>();
+        private int depth = 0;
+
+        private Batch(Thread owner, Map<Integer, DataChange> changes) {
+            this.owner = owner;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * Handle for a variable defined once in the file, null if the variable is missing or defined on
+     * multiple locations.
+     */
+    public VariableHandle findHandle(String variable) {
+        return uniqueIndex().byName().get(variable);
+    }
+
+    /**
+     * Handle for a variable defined once in the file.
+     *
+     * @param variable variable name
+     * @throws IllegalArgumentException if the variable is missing or defined on multiple locations
+     */
+    public VariableHandle handle(String variable) {
+        VariableHandle handle = findHandle(variable);
+        if (handle == null) {
+            throw new IllegalArgumentException(String.format("variable '%s' not found or not unique", variable));
+        }
+        return handle;
+    }
+
+    /**
+     * Handle for a temp attribute (str, int, dex, life, mana, difficulty).
+     *
+     * @param attr attribute alias
+     * @throws IllegalArgumentException if the attribute is not found
+     */
+    public VariableHandle tempAttrHandle(String attr) {
+        UniqueIndex index = uniqueIndex();
+        VariableHandle handle = index.byTempAttr().get(attr);
+        if (handle != null) {
+            return handle;
+        }
+        List<VariableInfo> varList = getTempVariableInfo(attr);
+        if (varList.size() != 1 || varList.getFirst() == null) {
+            throw new IllegalArgumentException(String.format("attribute not found %s", attr));
+        }
+        VariableInfo attrVar = varList.getFirst();
+        handle = index.byOffset().computeIfAbsent(attrVar.getValOffset(), k -> {
+            VariableHandle h = new VariableHandle(index, attrVar);
+            stage(h);
+            return h;
+        });
+        index.byKeyOffset().putIfAbsent(attrVar.getKeyOffset(), handle);
+        index.byTempAttr().put(attr, handle);
+        return handle;
+    }
+
+    public boolean isValid(VariableHandle handle) {
+        return handle != null && handle.getOwner() == uniqueIndex;
+    }
+
+    private void assertValid(VariableHandle handle) {
+        if (!isValid(handle)) {
+            throw new IllegalStateException("stale variable handle: " + handle);
+        }
+    }
+
+    private VariableInfo current(VariableHandle handle) {
+        assertValid(handle);
+        if (ownBatch() == null && handle.isResolved()) {
+            return handle.current();
+        }
+        return getChangesForVariable(handle.getVariable());
+    }
+
+    /**
+     * Current value of an integer or float variable, floats are rounded.
+     */
+    public int readInt(VariableHandle handle) {
+        VariableInfo v = current(handle);
+        if (v.isInt()) {
+            return (Integer) v.getValue();
+        } else if (v.isFloat()) {
+            return Math.round((Float) v.getValue());
+        }
+        throw new IllegalStateException("invalid variable: " + v);
+    }
+
+    /**
+     * Current value of a float or integer variable.
+     */
+    public float readFloat(VariableHandle handle) {
+        VariableInfo v = current(handle);
+        if (v.isFloat()) {
+            return (Float) v.getValue();
+        } else if (v.isInt()) {
+            return (Integer) v.getValue();
+        }
+        throw new IllegalStateException("invalid variable: " + v);
+    }
+
+    /**
+     * Stage a new value for an integer or float variable. Once the variable has a staged value a new change
+     * replaces it, built without cloning the variable again. Writing back the original value drops the change.
+     */
+    public void writeInt(VariableHandle handle, int value) {
+        assertValid(handle);
+        if (isSingleValue(handle) && !isOriginalValue(handle.getVariable(), value)) {
+            VariableInfo staged = handle.getStaged();
+            if (staged.isInt()) {
+                if ((Integer) staged.getValue() != value) {
+                    replaceStaged(handle, withValue(handle.getVariable()).value(value).build());
+                }
+                return;
+            } else if (staged.isFloat()) {
+                replaceStaged(handle, withValue(handle.getVariable()).value((float) value).build());
+                return;
+            }
+        }
+
+        VariableInfo variable = handle.getVariable();
+        if (variable.isFloat()) {
+            setFloat(variable, value);
+        } else {
+            setInt(variable, value);
+        }
+    }
+
+    /**
+     * Stage a new value for a float variable. Once the variable has a staged value a new change replaces it.
+     */
+    public void writeFloat(VariableHandle handle, float value) {
+        assertValid(handle);
+        if (isSingleValue(handle) && handle.getStaged().isFloat() && !isOriginalValue(handle.getVariable(), value)) {
+            replaceStaged(handle, withValue(handle.getVariable()).value(value).build());
+            return;
+        }
+        setFloat(handle.getVariable(), value);
+    }
+
+    /**
+     * Whether the handle has a staged change holding just its value, which can be replaced as a whole
+     */
+    private boolean isSingleValue(VariableHandle handle) {
+        DataChangeVariable change = handle.getStagedChange();
+        return ownBatch() == null && handle.isResolved() && change != null && change.getSize() == 1
+                && !change.isRemove() && change.getAddVars().isEmpty() && change.getPadding().length == 0;
+    }
+
+    /**
+     * Stage a new change for the variable. The change already staged is left untouched, it may be in use by a
+     * writer rendering the file.
+     */
+    private void replaceStaged(VariableHandle handle, VariableInfo newVar) {
+        VariableInfo variable = handle.getVariable();
+        putChange(variable.getValOffset(), new DataChangeVariable(variable, newVar));
+        changed(variable.getValOffset());
+    }
+
+    private static VariableInfo.Builder withValue(VariableInfo variable) {
+        return VariableInfo.builder()
+                .name(variable.getName())
+                .alias(variable.getAlias())
+                .keyOffset(variable.getKeyOffset())
+                .valOffset(variable.getValOffset())
+                .valSize(variable.getValSize())
+                .variableType(variable.getVariableType())
+                .blockOffset(variable.getBlockOffset());
+    }
+
+    /**
+     * Whether the value is the one read from the file, a write restoring it must drop the staged change
+     */
+    private static boolean isOriginalValue(VariableInfo variable, int value) {
+        if (variable.isInt()) {
+            return (Integer) variable.getValue() == value;
+        }
+        return isOriginalValue(variable, (float) value);
+    }
+
+    private static boolean isOriginalValue(VariableInfo variable, float value) {
+        return variable.isFloat() && Float.floatToIntBits((Float) variable.getValue()) == Float.floatToIntBits(value);
+    }
+
+    private record BlockIndex(Map<BlockType, List<BlockInfo>> byType,
+                              Map<Integer, ImmutableListMultimap<String, VariableInfo>> sortedVariables) {
+    }
+
+    private record UniqueIndex(Map<String, VariableHandle> byName, Map<Integer, VariableHandle> byOffset,
+                               Map<Integer, VariableHandle> byKeyOffset, Map<String, VariableHandle> byTempAttr) {
+    }
 }
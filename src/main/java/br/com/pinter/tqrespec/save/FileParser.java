@@ -24,6 +24,7 @@ import br.com.pinter.tqrespec.core.UnhandledRuntimeException;
 import br.com.pinter.tqrespec.logging.Log;
 import br.com.pinter.tqrespec.util.Constants;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder;
@@ -35,12 +36,16 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 import static java.lang.System.Logger.Level.ERROR;
 import static java.lang.System.Logger.Level.INFO;
@@ -55,14 +60,25 @@ public abstract class FileParser {
     protected static final int BEGIN_BLOCK_SIZE = BEGIN_BLOCK_BYTES.length + 4;
     private static final byte[] END_BLOCK_BYTES = new byte[]{0x09, 0x00, 0x00, 0x00, 0x65, 0x6E, 0x64, 0x5F, 0x62, 0x6C, 0x6F, 0x63, 0x6B};
     protected static final int END_BLOCK_SIZE = END_BLOCK_BYTES.length + 4;
+    private static final byte[] BLOCK_SUFFIX = "_block".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] BLOCK_SUFFIX_SHIFT = new int[256];
     private static final String BUG_VARIABLESIZE_ERROR_MSG = "BUG: variable size != 0";
+    private static final Pattern VARIABLE_NAME = Pattern.compile("^[^a-zA-Z_$0-9.]*([a-zA-Z_$0-9.]*).*$");
     private final ListMultimap<String, VariableInfo> specialVariableStore = MultimapBuilder.hashKeys().arrayListValues().build();
     private ConcurrentHashMap<Integer, BlockInfo> blockInfoTable = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, List<Integer>> variableLocation = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, List<VariableInfo>> variableAlias = new ConcurrentHashMap<>();
     private List<Integer> blocksIgnore = new ArrayList<>();
     private ByteBuffer buffer = null;
     private Platform detectedPlatform = Platform.WINDOWS;
 
+    static {
+        Arrays.fill(BLOCK_SUFFIX_SHIFT, BLOCK_SUFFIX.length);
+        for (int i = 0; i < BLOCK_SUFFIX.length - 1; i++) {
+            BLOCK_SUFFIX_SHIFT[BLOCK_SUFFIX[i] & 0xFF] = BLOCK_SUFFIX.length - 1 - i;
+        }
+    }
+
     public ConcurrentMap<Integer, BlockInfo> getBlockInfo() {
         return blockInfoTable;
     }
@@ -71,6 +87,10 @@ public abstract class FileParser {
         return variableLocation;
     }
 
+    public ConcurrentMap<String, List<VariableInfo>> getVariableAlias() {
+        return variableAlias;
+    }
+
     public ByteBuffer getBuffer() {
         return buffer;
     }
@@ -98,6 +118,7 @@ public abstract class FileParser {
     void reset() {
         blockInfoTable = new ConcurrentHashMap<>();
         variableLocation = new ConcurrentHashMap<>();
+        variableAlias = new ConcurrentHashMap<>();
         blocksIgnore = new ArrayList<>();
         buffer = null;
     }
@@ -111,6 +132,16 @@ public abstract class FileParser {
         this.getVariableLocation().get(varName).add(blockStart);
     }
 
+    /**
+     * Index a variable by the alias assigned by processBlockSpecialVariable
+     *
+     * @param variableInfo variable with alias already assigned
+     */
+    protected void putAliasIndex(VariableInfo variableInfo) {
+        this.getVariableAlias().computeIfAbsent(variableInfo.getAlias(), k -> Collections.synchronizedList(new ArrayList<>()));
+        this.getVariableAlias().get(variableInfo.getAlias()).add(variableInfo);
+    }
+
     public void parse() {
         try {
             fillBuffer();
@@ -330,17 +361,87 @@ public abstract class FileParser {
 
             logger.log(TRACE, "''{0}''", block);
         }
+
+        buildBlockPaths();
     }
 
     private void setParentType(BlockInfo block) {
+        BlockType blockType = block.getBlockType();
+        if (blockType.equals(FileBlockType.UNKNOWN)) {
+            return;
+        }
         BlockInfo parentBlock = blockInfoTable.get(block.getParentOffset());
-        if (parentBlock != null && parentBlock.getVariables().isEmpty()
+        while (parentBlock != null && parentBlock.getVariables().isEmpty()
                 && parentBlock.getBlockType().equals(FileBlockType.UNKNOWN)) {
-            parentBlock.setBlockType(block.getBlockType());
-            setParentType(parentBlock);
+            parentBlock.setBlockType(blockType);
+            parentBlock = blockInfoTable.get(parentBlock.getParentOffset());
+        }
+    }
+
+    /**
+     * Assigns {@link BlockInfo#getPath()} to all blocks, walking the tree from the top level blocks. Block types must
+     * be known, so this runs after all blocks are parsed.
+     */
+    private void buildBlockPaths() {
+        List<Integer> rootBlocks = blockInfoTable.values().stream().filter(b -> b.getParentOffset() == -1)
+                .map(BlockInfo::getStart).sorted().toList();
+        buildBlockPaths(null, rootBlocks);
+    }
+
+    private void buildBlockPaths(String parentPath, List<Integer> siblings) {
+        Map<String, Integer> count = new HashMap<>();
+        for (int start : siblings) {
+            BlockInfo block = blockInfoTable.get(start);
+            String type = block.getBlockType().name();
+            String segment = String.format("%s[%d]", type, count.merge(type, 1, Integer::sum) - 1);
+            block.setPath(parentPath == null ? segment : parentPath + "/" + segment);
+            buildBlockPaths(block.getPath(), block.getChildren());
         }
     }
 
+    /**
+     * Checks that every block of the raw data is closed, without building the blocks table
+     *
+     * @return the number of blocks, or -1 if the blocks aren't balanced
+     */
+    static int scanBlocks(ByteBuffer content) {
+        byte[] data;
+        int start;
+        int limit;
+        if (content.hasArray()) {
+            data = content.array();
+            start = content.arrayOffset() + content.position();
+            limit = content.arrayOffset() + content.limit();
+        } else {
+            data = new byte[content.remaining()];
+            content.get(content.position(), data);
+            start = 0;
+            limit = data.length;
+        }
+        int depth = 0;
+        int count = 0;
+        // both tags end with the suffix, bytes that can't be part of it are skipped
+        for (int i = start + BLOCK_SUFFIX.length - 1; i < limit; i += BLOCK_SUFFIX_SHIFT[data[i] & 0xFF]) {
+            if (data[i] != BLOCK_SUFFIX[BLOCK_SUFFIX.length - 1]) {
+                continue;
+            }
+            if (endsWith(data, start, i, BEGIN_BLOCK_BYTES)) {
+                depth++;
+            } else if (endsWith(data, start, i, END_BLOCK_BYTES)) {
+                if (--depth < 0) {
+                    return -1;
+                }
+                count++;
+            }
+        }
+        return depth == 0 ? count : -1;
+    }
+
+    private static boolean endsWith(byte[] data, int start, int end, byte[] tag) {
+        int from = end + 1 - tag.length;
+        return from >= start && Arrays.equals(data, from, end + 1, tag, 0, tag.length);
+    }
+
     /**
      * Searches the raw data for blocks
      */
@@ -349,6 +450,8 @@ public abstract class FileParser {
         int foundEnd = 0;
 
         LinkedList<Integer> queueBegin = new LinkedList<>();
+        //children of the blocks still open, closed blocks are appended to the list of the enclosing block
+        LinkedList<ImmutableList.Builder<Integer>> queueChildren = new LinkedList<>();
 
         int lastBegin = -1;
         for (int i = 0; i < getBuffer().capacity(); i++) {
@@ -365,6 +468,7 @@ public abstract class FileParser {
             if (b.equals(BEGIN_BLOCK_BYTES[foundBegin]) && ++foundBegin == BEGIN_BLOCK_BYTES.length) {
                 int blockTagOffset = i - (foundBegin - 1);
                 queueBegin.add(blockTagOffset);
+                queueChildren.add(ImmutableList.builder());
                 lastBegin = blockTagOffset;
                 foundBegin = 0;
                 logger.log(TRACE, "adding begin-block ''{0}'' to queue", blockTagOffset);
@@ -381,8 +485,11 @@ public abstract class FileParser {
                 //byte offset where block ends
                 block.setEnd(blockEnd);
                 block.setSize(blockEnd - blockStart + 1);
+                block.setChildren(queueChildren.removeLast().build());
+                block.setDepth(queueBegin.size());
                 if (lastBegin >= 0 && queueBegin.peekLast() != null) {
                     block.setParentOffset(queueBegin.peekLast());
+                    queueChildren.getLast().add(blockStart);
                 }
                 blockInfoTable.put(blockStart, block);
                 foundEnd = 0;
@@ -566,7 +673,19 @@ public abstract class FileParser {
     }
 
     protected String filterFileVariableName(String name) {
-        String varId = name.replaceAll("^[^a-zA-Z_$0-9.]*([a-zA-Z_$0-9.]*).*$", "$1");
-        return varId.replace(".", "_");
+        String varId = name;
+        for (int i = 0; i < name.length(); i++) {
+            if (!isVariableNameChar(name.charAt(i))) {
+                // called for every variable read, the pattern is only needed for names with other characters
+                varId = VARIABLE_NAME.matcher(name).replaceAll("$1");
+                break;
+            }
+        }
+        return varId.replace('.', '_');
+    }
+
+    private static boolean isVariableNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '$' || c == '.';
     }
 }
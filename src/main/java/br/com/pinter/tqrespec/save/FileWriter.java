@@ -21,18 +21,97 @@
 
 package br.com.pinter.tqrespec.save;
 
-import java.io.ByteArrayOutputStream;
+import br.com.pinter.tqrespec.logging.Log;
+
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.ERROR;
 
 public abstract class FileWriter {
+    private static final System.Logger logger = Log.getLogger(FileWriter.class);
+
+    /**
+     * Span of the file to be written
+     *
+     * @param sourceOffset offset of the data in the source buffer, -1 if the data isn't from the source buffer
+     * @param changeOffset offset of the change rendered in the span, -1 if the span isn't a change
+     */
+    private record Span(ByteBuffer data, int sourceOffset, int changeOffset) {
+        Span(ByteBuffer data, int sourceOffset) {
+            this(data, sourceOffset, -1);
+        }
+
+        Span duplicate() {
+            return new Span(data.duplicate(), sourceOffset, changeOffset);
+        }
+    }
+
+    /**
+     * Bytes expected in the written file at a position
+     */
+    private record Check(int position, ByteBuffer expected) {
+    }
+
+    /**
+     * State needed to verify a written file and to restore it if the verification fails
+     *
+     * @param previous content of the file before the save, null if the file didn't exist
+     */
+    private record Verification(Path path, ByteBuffer previous, long length, int crc, List<Check> checks) {
+    }
+
+    /**
+     * File rendered by {@link #writeBuffers}, waiting to be written
+     */
+    private record Target(Path path, List<Span> spans, Verification verification) {
+    }
+
+    /**
+     * State of a single save. Writers are shared by threads saving at the same time, nothing of a save is kept
+     * in the writer.
+     */
+    private static final class Save {
+        private final ByteBuffer source;
+        private final boolean verify;
+        private Crc32.Index crcIndex;
+
+        private Save(ByteBuffer source, boolean verify) {
+            this.source = source;
+            this.verify = verify;
+        }
+
+        /**
+         * crc index of the source buffer, built on first use
+         */
+        private Crc32.Index crcIndex() {
+            if (crcIndex == null) {
+                crcIndex = new Crc32.Index(source);
+            }
+            return crcIndex;
+        }
+    }
 
     public abstract boolean save();
 
@@ -42,6 +121,14 @@ public abstract class FileWriter {
 
     protected abstract FileDataHolder getSaveData();
 
+    /**
+     * Read the saved files back and check them against the changes, restoring the previous content of the file
+     * if the check fails. Read once at the start of each save, enabled by default.
+     */
+    public boolean isVerify() {
+        return true;
+    }
+
     protected void writeBuffer(String rootPath, String filename) throws IOException {
         writeBuffer(rootPath, filename, getSaveData().getDataMap(), FileSystems.getDefault());
     }
@@ -51,99 +138,530 @@ public abstract class FileWriter {
     }
 
     protected void writeBuffer(String rootPath, String filename, FileDataMap fileDataMap, FileSystem fileSystem) throws IOException {
-        getSaveData().getBuffer().rewind();
+        ChangeJournal journal = fileDataMap.getJournal();
+        Path path = fileSystem.getPath(rootPath, filename);
+        Save save = new Save(getSaveData().getBuffer(), isVerify());
+        List<Span> spans = render(save.source, fileDataMap);
+        ByteBuffer crcField = updateCrc(spans, save);
+        Verification verification = prepareVerification(path, spans, fileDataMap, save);
+        boolean patched = patch(path, fileDataMap, spans, crcField, journal, save);
+        if (!patched) {
+            writeSpans(path, spans, journal);
+        }
+        if (journal != null) {
+            // the journal is bound to the previous content of the file
+            fileDataMap.setJournal(null);
+        }
+        // a patched file keeps the bytes outside of the changes from the disk, not from the loaded content
+        verify(verification, !patched);
+    }
+
+    /**
+     * Writes an already rendered file, updating the crc if the file format requires it
+     */
+    protected void writeBuffer(String rootPath, String filename, ByteBuffer data, FileSystem fileSystem) throws IOException {
+        writeBuffer(rootPath, filename, List.of(data.asReadOnlyBuffer().rewind()), fileSystem);
+    }
+
+    /**
+     * Writes an already rendered file given as consecutive segments, updating the crc if the file format
+     * requires it
+     */
+    protected void writeBuffer(String rootPath, String filename, List<ByteBuffer> segments, FileSystem fileSystem) throws IOException {
+        List<Span> spans = spans(segments);
+        updateCrc(spans, null);
+        writeSpans(fileSystem.getPath(rootPath, filename), spans, null);
+    }
 
+    /**
+     * Streams the rendered file to the channel, updating the crc if the file format requires it. The unchanged
+     * data is written straight from the source buffer, the file is never copied to a single array. The channel
+     * isn't closed.
+     *
+     * @return the number of bytes written
+     */
+    public long writeTo(WritableByteChannel channel, FileDataMap fileDataMap) throws IOException {
+        Save save = new Save(getSaveData().getBuffer(), false);
+        List<Span> spans = render(save.source, fileDataMap);
+        updateCrc(spans, save);
+        return write(channel, toArray(spans));
+    }
+
+    public long writeTo(OutputStream out, FileDataMap fileDataMap) throws IOException {
+        return writeTo(Channels.newChannel(out), fileDataMap);
+    }
+
+    /**
+     * Streams an already rendered file to the channel, updating the crc if the file format requires it. The
+     * channel isn't closed.
+     *
+     * @return the number of bytes written
+     */
+    public long writeTo(WritableByteChannel channel, ByteBuffer data) throws IOException {
+        return writeTo(channel, List.of(data.asReadOnlyBuffer().rewind()));
+    }
+
+    public long writeTo(OutputStream out, ByteBuffer data) throws IOException {
+        return writeTo(Channels.newChannel(out), data);
+    }
+
+    /**
+     * Streams an already rendered file, given as consecutive segments, to the channel. The channel isn't closed.
+     *
+     * @return the number of bytes written
+     */
+    public long writeTo(WritableByteChannel channel, List<ByteBuffer> segments) throws IOException {
+        List<Span> spans = spans(segments);
+        updateCrc(spans, null);
+        return write(channel, toArray(spans));
+    }
+
+    public long writeTo(OutputStream out, List<ByteBuffer> segments) throws IOException {
+        return writeTo(Channels.newChannel(out), segments);
+    }
+
+    private static List<Span> spans(List<ByteBuffer> segments) {
+        List<Span> spans = new ArrayList<>(segments.size());
+        for (ByteBuffer segment : segments) {
+            spans.add(new Span(segment.asReadOnlyBuffer(), -1));
+        }
+        return spans;
+    }
+
+    /**
+     * Writes the same content to several files in the directory, the files differing only by the value of a string
+     * variable. The content is rendered once and each file replaces only the span of the variable and the crc. The
+     * files are written in order, a failed file doesn't stop the others. The variable keeps the value of the last file.
+     *
+     * @param targets value of the variable by file name
+     */
+    protected void writeBuffers(String rootPath, String variable, Map<String, String> targets) throws IOException {
+        if (targets.isEmpty()) {
+            return;
+        }
+        FileDataMap fileDataMap = getSaveData().getDataMap();
+        Save save = new Save(getSaveData().getBuffer(), isVerify());
+        int offset = fileDataMap.handle(variable).getVariable().getValOffset();
+        List<Span> shared = null;
+        int variableSpan = -1;
+        List<Target> writes = new ArrayList<>(targets.size());
+        for (Map.Entry<String, String> target : targets.entrySet()) {
+            fileDataMap.setString(variable, target.getValue());
+            List<Span> rendered = shared;
+            if (shared == null || variableSpan < 0 || fileDataMap.getChange(offset) == null) {
+                // the value may be the same as the loaded one, leaving no change to replace
+                rendered = render(save.source, fileDataMap);
+            }
+            if (shared == null) {
+                shared = rendered;
+                for (int i = 0; i < shared.size(); i++) {
+                    if (shared.get(i).changeOffset() == offset) {
+                        variableSpan = i;
+                    }
+                }
+            }
+            // each file has its own buffers, the position is consumed by the write
+            List<Span> spans = new ArrayList<>(rendered.size());
+            for (Span span : rendered) {
+                spans.add(span.duplicate());
+            }
+            if (rendered == shared && variableSpan >= 0) {
+                spans.set(variableSpan, new Span(ByteBuffer.wrap(fileDataMap.getBytes(offset)), -1, offset));
+            }
+            updateCrc(spans, save);
+            Path path = Path.of(rootPath, target.getKey());
+            Verification verification = prepareVerification(path, spans, fileDataMap, save);
+            writes.add(new Target(path, spans, verification));
+        }
+
+        IOException error = null;
+        for (Target write : writes) {
+            try {
+                writeSpans(write.path(), write.spans(), null);
+                verify(write.verification(), true);
+            } catch (IOException e) {
+                error = error != null ? error : e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+
+        ChangeJournal journal = fileDataMap.getJournal();
+        if (journal != null) {
+            journal.discard();
+            fileDataMap.setJournal(null);
+        }
+    }
+
+    /**
+     * Keeps what is needed to verify the file after written: the current content of the file, the size and crc of
+     * the rendered file, and the bytes expected for each change and for the key of each changed variable.
+     *
+     * @return null if the file won't be verified
+     */
+    private Verification prepareVerification(Path path, List<Span> spans, FileDataMap fileDataMap, Save save)
+            throws IOException {
+        if (!save.verify || path.getFileSystem() != FileSystems.getDefault()) {
+            return null;
+        }
+        List<Check> checks = new ArrayList<>();
+        long length = 0;
+        Span previous = null;
+        for (Span span : spans) {
+            int position = (int) length;
+            length += span.data().remaining();
+            if (span.changeOffset() < 0) {
+                previous = span;
+                continue;
+            }
+            checks.add(new Check(position, span.data().duplicate()));
+            // the key of the variable is left unchanged in the source span before the change
+            if (fileDataMap.getChange(span.changeOffset()) instanceof DataChangeVariable change && !change.isRemove()
+                    && change.getAddVars().isEmpty() && change.getOldVariable().getValOffset() == span.changeOffset()
+                    && previous != null && previous.sourceOffset() >= 0) {
+                VariableInfo variable = change.getOldVariable();
+                int keyLength = variable.getValOffset() - variable.getKeyOffset();
+                if (variable.getKeyOffset() >= previous.sourceOffset()
+                        && previous.sourceOffset() + previous.data().remaining() == span.changeOffset()) {
+                    byte[] name = variable.getName().getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer key = ByteBuffer.allocate(4 + name.length).order(ByteOrder.LITTLE_ENDIAN)
+                            .putInt(name.length).put(name).flip();
+                    if (key.remaining() == keyLength) {
+                        checks.add(new Check(position - keyLength, key));
+                    }
+                }
+            }
+            previous = span;
+        }
+        return new Verification(path, read(path), length, calculateCRC32(spans, save), checks);
+    }
+
+    /**
+     * Reads the written file back and checks it: size and crc of the whole content, the crc stored in the file,
+     * the blocks and the bytes of each change and variable key. If the check fails, the previous content of the
+     * file is restored.
+     *
+     * @param wholeContent whether the whole content of the file was written, or only the changes
+     * @throws IOException if the file doesn't match the changes
+     */
+    private void verify(Verification verification, boolean wholeContent) throws IOException {
+        if (verification == null) {
+            return;
+        }
+        Path path = verification.path();
+        ByteBuffer written = read(path);
+        try {
+            String error = check(verification, written, wholeContent);
+            if (error == null) {
+                return;
+            }
+            logger.log(ERROR, "Verification of ''{0}'' failed ({1}), restoring previous content", path, error);
+            if (verification.previous() == null) {
+                Files.deleteIfExists(path);
+            } else {
+                commit(path, new ByteBuffer[]{verification.previous().duplicate()});
+            }
+            throw new IOException(String.format("Verification of '%s' failed (%s), previous content restored",
+                    path, error));
+        } finally {
+            BufferPool.release(written);
+            BufferPool.release(verification.previous());
+        }
+    }
+
+    /**
+     * @return the reason of the failure, or null if the file matches
+     */
+    private String check(Verification verification, ByteBuffer written, boolean wholeContent) {
+        if (written == null || written.capacity() != verification.length()) {
+            return "size";
+        }
+        if (wholeContent && Crc32.of(written) != verification.crc()) {
+            return "crc";
+        }
+        if (isCreateCrc()) {
+            int crcOffset = getCrcOffset();
+            int crc = Crc32.of(written.slice(0, crcOffset));
+            crc = Crc32.update(crc, ByteBuffer.allocate(4));
+            crc = Crc32.update(crc, written.slice(crcOffset + 4, written.capacity() - crcOffset - 4));
+            if (written.getInt(crcOffset) != crc) {
+                return "stored crc";
+            }
+        }
+        if (FileParser.scanBlocks(written) < 0) {
+            return "blocks";
+        }
+        for (Check check : verification.checks()) {
+            ByteBuffer expected = check.expected();
+            if (check.position() < 0 || check.position() + expected.remaining() > written.capacity()
+                    || !written.slice(check.position(), expected.remaining()).equals(expected)) {
+                return "change at " + check.position();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the content of the file, or null if the file doesn't exist
+     */
+    private static ByteBuffer read(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return BufferPool.read(channel, (int) channel.size());
+        }
+    }
+
+    /**
+     * Splits the file in the sequence of spans to be written: read-only slices of the source buffer for the
+     * unchanged data and the rendered bytes of each change. The source buffer position and limit are not touched.
+     */
+    private List<Span> render(ByteBuffer source, FileDataMap fileDataMap) {
         List<Integer> changedOffsets = new ArrayList<>(fileDataMap.changesKeySet());
         Collections.sort(changedOffsets);
 
-        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
-
+        ByteBuffer content = source.duplicate().clear();
+        List<Span> spans = new ArrayList<>(changedOffsets.size() * 2 + 1);
+        int position = 0;
         for (int offset : changedOffsets) {
-            int rawCount = offset - getSaveData().getBuffer().position();
-            getSaveData().getBuffer().limit(rawCount +
-                    getSaveData().getBuffer().position()
-            );
-
-            byte[] buf = new byte[getSaveData().getBuffer().remaining()];
-            //copy to buf everything until next change
-            getSaveData().getBuffer().get(buf);
-            outBuffer.write(buf);
-            //restore bytebuffer limit
-            getSaveData().getBuffer().limit(getSaveData().getBuffer().capacity());
-            //copy changed bytes to output buffer
-            byte[] c = fileDataMap.getBytes(offset);
-            outBuffer.write(c);
-            int previousValueLength = fileDataMap.getPreviousValueLength(offset);
-            //skip the number of bytes of original value, to position the cursor at the next variable/block
-            getSaveData().getBuffer().position(
-                    getSaveData().getBuffer().position() + previousValueLength);
-        }
-
-        //copy remaining data to output buffer
-        while (true) {
-            byte[] buf = new byte[getSaveData().getBuffer().remaining()];
-            getSaveData().getBuffer().get(buf);
-            outBuffer.write(buf);
-            if (buf.length == 0) break;
-        }
-
-        ByteBuffer bufferWrapper = ByteBuffer.wrap(outBuffer.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+            if (offset > position) {
+                //everything until next change
+                spans.add(new Span(content.slice(position, offset - position).asReadOnlyBuffer(), position));
+            }
+            spans.add(new Span(ByteBuffer.wrap(fileDataMap.getBytes(offset)), -1, offset));
+            //skip the number of bytes of original value, the next span starts at the next variable/block
+            position = offset + fileDataMap.getPreviousValueLength(offset);
+        }
+        if (position < content.capacity()) {
+            spans.add(new Span(content.slice(position, content.capacity() - position).asReadOnlyBuffer(), position));
+        }
+        return spans;
+    }
 
-        if (isCreateCrc()) {
-            bufferWrapper.putInt(getCrcOffset(), 0);
-            bufferWrapper.putInt(getCrcOffset(), calculateCRC32(bufferWrapper));
+    /**
+     * Computes the crc over the spans if the file format requires it
+     *
+     * @param save save the spans are rendered for, null if no span is from the source buffer
+     * @return the buffer holding the crc, or null if the file has no crc
+     */
+    private ByteBuffer updateCrc(List<Span> spans, Save save) {
+        if (!isCreateCrc()) {
+            return null;
+        }
+        ByteBuffer crcField = splitCrcField(spans);
+        crcField.putInt(0, calculateCRC32(spans, save));
+        return crcField;
+    }
+
+    /**
+     * Updates only the changed bytes of the file when no change modifies the size of a value, so the layout of
+     * the file is the same. Used only when the file can be recovered from the journal, and when the file still
+     * has the size and the previous values at the changed offsets of the content it was loaded from.
+     *
+     * @return false if the file must be fully rewritten
+     */
+    private boolean patch(Path path, FileDataMap fileDataMap, List<Span> spans, ByteBuffer crcField,
+                          ChangeJournal journal, Save save) throws IOException {
+        if (journal == null || path.getFileSystem() != FileSystems.getDefault() || !Files.isRegularFile(path)) {
+            return false;
+        }
+        ByteBuffer source = save.source.duplicate().clear();
+        Map<Integer, ByteBuffer> patches = new TreeMap<>();
+        int maxPreviousLength = 0;
+        for (int offset : fileDataMap.changesKeySet()) {
+            if (fileDataMap.getDataLength(offset) != fileDataMap.getPreviousValueLength(offset)) {
+                return false;
+            }
+            patches.put(offset, ByteBuffer.wrap(fileDataMap.getBytes(offset)));
+            maxPreviousLength = Math.max(maxPreviousLength, fileDataMap.getPreviousValueLength(offset));
+        }
+        if (crcField != null) {
+            patches.put(getCrcOffset(), crcField.duplicate().rewind());
         }
 
-        Files.write(fileSystem.getPath(rootPath, filename), bufferWrapper.array());
-        getSaveData().getBuffer().rewind();
+        ByteBuffer scratch = BufferPool.acquire(maxPreviousLength);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != source.capacity()) {
+                return false;
+            }
+            for (int offset : fileDataMap.changesKeySet()) {
+                ByteBuffer previous = scratch.clear().limit(fileDataMap.getPreviousValueLength(offset));
+                while (previous.hasRemaining()) {
+                    if (channel.read(previous, offset + (long) previous.position()) < 0) {
+                        return false;
+                    }
+                }
+                if (!previous.flip().equals(source.slice(offset, previous.limit()))) {
+                    logger.log(DEBUG, "File ''{0}'' changed since loaded, rewriting", path);
+                    return false;
+                }
+            }
+
+            // an interrupted patch is completed from the journal on the next load
+            long length = 0;
+            for (Span span : spans) {
+                length += span.data().remaining();
+            }
+            if (!journal.beginPatch(length, Crc32.standard(calculateCRC32(spans, save), length), patches)) {
+                return false;
+            }
+            for (Map.Entry<Integer, ByteBuffer> e : patches.entrySet()) {
+                ByteBuffer data = e.getValue().duplicate();
+                while (data.hasRemaining()) {
+                    channel.write(data, e.getKey() + (long) data.position());
+                }
+            }
+            channel.force(false);
+        } finally {
+            BufferPool.release(scratch);
+        }
+        journal.discard();
+        logger.log(DEBUG, "Patched {0} changes in ''{1}''", patches.size(), path);
+        return true;
     }
 
-    public int calculateCRC32(ByteBuffer buffer) {
-        int oldPosition = buffer.position();
-        byte[] data = new byte[buffer.capacity() - oldPosition];
-        buffer.get(data);
-        buffer.position(oldPosition);
-
-        int[] table = {
-                0x00000000, 0x77073096, 0xee0e612c, 0x990951ba, 0x076dc419, 0x706af48f, 0xe963a535, 0x9e6495a3,
-                0x0edb8832, 0x79dcb8a4, 0xe0d5e91e, 0x97d2d988, 0x09b64c2b, 0x7eb17cbd, 0xe7b82d07, 0x90bf1d91,
-                0x1db71064, 0x6ab020f2, 0xf3b97148, 0x84be41de, 0x1adad47d, 0x6ddde4eb, 0xf4d4b551, 0x83d385c7,
-                0x136c9856, 0x646ba8c0, 0xfd62f97a, 0x8a65c9ec, 0x14015c4f, 0x63066cd9, 0xfa0f3d63, 0x8d080df5,
-                0x3b6e20c8, 0x4c69105e, 0xd56041e4, 0xa2677172, 0x3c03e4d1, 0x4b04d447, 0xd20d85fd, 0xa50ab56b,
-                0x35b5a8fa, 0x42b2986c, 0xdbbbc9d6, 0xacbcf940, 0x32d86ce3, 0x45df5c75, 0xdcd60dcf, 0xabd13d59,
-                0x26d930ac, 0x51de003a, 0xc8d75180, 0xbfd06116, 0x21b4f4b5, 0x56b3c423, 0xcfba9599, 0xb8bda50f,
-                0x2802b89e, 0x5f058808, 0xc60cd9b2, 0xb10be924, 0x2f6f7c87, 0x58684c11, 0xc1611dab, 0xb6662d3d,
-                0x76dc4190, 0x01db7106, 0x98d220bc, 0xefd5102a, 0x71b18589, 0x06b6b51f, 0x9fbfe4a5, 0xe8b8d433,
-                0x7807c9a2, 0x0f00f934, 0x9609a88e, 0xe10e9818, 0x7f6a0dbb, 0x086d3d2d, 0x91646c97, 0xe6635c01,
-                0x6b6b51f4, 0x1c6c6162, 0x856530d8, 0xf262004e, 0x6c0695ed, 0x1b01a57b, 0x8208f4c1, 0xf50fc457,
-                0x65b0d9c6, 0x12b7e950, 0x8bbeb8ea, 0xfcb9887c, 0x62dd1ddf, 0x15da2d49, 0x8cd37cf3, 0xfbd44c65,
-                0x4db26158, 0x3ab551ce, 0xa3bc0074, 0xd4bb30e2, 0x4adfa541, 0x3dd895d7, 0xa4d1c46d, 0xd3d6f4fb,
-                0x4369e96a, 0x346ed9fc, 0xad678846, 0xda60b8d0, 0x44042d73, 0x33031de5, 0xaa0a4c5f, 0xdd0d7cc9,
-                0x5005713c, 0x270241aa, 0xbe0b1010, 0xc90c2086, 0x5768b525, 0x206f85b3, 0xb966d409, 0xce61e49f,
-                0x5edef90e, 0x29d9c998, 0xb0d09822, 0xc7d7a8b4, 0x59b33d17, 0x2eb40d81, 0xb7bd5c3b, 0xc0ba6cad,
-                0xedb88320, 0x9abfb3b6, 0x03b6e20c, 0x74b1d29a, 0xead54739, 0x9dd277af, 0x04db2615, 0x73dc1683,
-                0xe3630b12, 0x94643b84, 0x0d6d6a3e, 0x7a6a5aa8, 0xe40ecf0b, 0x9309ff9d, 0x0a00ae27, 0x7d079eb1,
-                0xf00f9344, 0x8708a3d2, 0x1e01f268, 0x6906c2fe, 0xf762575d, 0x806567cb, 0x196c3671, 0x6e6b06e7,
-                0xfed41b76, 0x89d32be0, 0x10da7a5a, 0x67dd4acc, 0xf9b9df6f, 0x8ebeeff9, 0x17b7be43, 0x60b08ed5,
-                0xd6d6a3e8, 0xa1d1937e, 0x38d8c2c4, 0x4fdff252, 0xd1bb67f1, 0xa6bc5767, 0x3fb506dd, 0x48b2364b,
-                0xd80d2bda, 0xaf0a1b4c, 0x36034af6, 0x41047a60, 0xdf60efc3, 0xa867df55, 0x316e8eef, 0x4669be79,
-                0xcb61b38c, 0xbc66831a, 0x256fd2a0, 0x5268e236, 0xcc0c7795, 0xbb0b4703, 0x220216b9, 0x5505262f,
-                0xc5ba3bbe, 0xb2bd0b28, 0x2bb45a92, 0x5cb36a04, 0xc2d7ffa7, 0xb5d0cf31, 0x2cd99e8b, 0x5bdeae1d,
-                0x9b64c2b0, 0xec63f226, 0x756aa39c, 0x026d930a, 0x9c0906a9, 0xeb0e363f, 0x72076785, 0x05005713,
-                0x95bf4a82, 0xe2b87a14, 0x7bb12bae, 0x0cb61b38, 0x92d28e9b, 0xe5d5be0d, 0x7cdcefb7, 0x0bdbdf21,
-                0x86d3d2d4, 0xf1d4e242, 0x68ddb3f8, 0x1fda836e, 0x81be16cd, 0xf6b9265b, 0x6fb077e1, 0x18b74777,
-                0x88085ae6, 0xff0f6a70, 0x66063bca, 0x11010b5c, 0x8f659eff, 0xf862ae69, 0x616bffd3, 0x166ccf45,
-                0xa00ae278, 0xd70dd2ee, 0x4e048354, 0x3903b3c2, 0xa7672661, 0xd06016f7, 0x4969474d, 0x3e6e77db,
-                0xaed16a4a, 0xd9d65adc, 0x40df0b66, 0x37d83bf0, 0xa9bcae53, 0xdebb9ec5, 0x47b2cf7f, 0x30b5ffe9,
-                0xbdbdf21c, 0xcabac28a, 0x53b39330, 0x24b4a3a6, 0xbad03605, 0xcdd70693, 0x54de5729, 0x23d967bf,
-                0xb3667a2e, 0xc4614ab8, 0x5d681b02, 0x2a6f2b94, 0xb40bbe37, 0xc30c8ea1, 0x5a05df1b, 0x2d02ef8d,
-        };
+    private void writeSpans(Path path, List<Span> spans, ChangeJournal journal) throws IOException {
+        ByteBuffer[] data = toArray(spans);
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            // files inside a zip are only committed when the filesystem is closed
+            if (journal != null) {
+                journal.beginWrite(data);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel, data);
+            }
+        } else {
+            commit(path, data);
+        }
+        if (journal != null) {
+            journal.discard();
+        }
+    }
 
-        int crc32 = 0;
-        for (byte b : data) {
-            crc32 = (crc32 >>> 8) ^ table[(crc32 ^ b) & 0xff];
+    /**
+     * Replaces the file atomically: the content is written and forced to a temporary file in the same directory,
+     * moved over the file and the directory is forced. An interruption leaves either the previous or the new
+     * content, never a partial file. Each commit uses its own temporary file, concurrent commits of the same
+     * file don't share it.
+     */
+    static void commit(Path path, ByteBuffer[] data) throws IOException {
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                write(channel, data);
+                channel.force(true);
+            }
+            if (Files.exists(path) && Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(path));
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                logger.log(DEBUG, "Atomic move not supported for ''{0}''", path);
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(path.toAbsolutePath().getParent());
+        } finally {
+            Files.deleteIfExists(tmp);
         }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories can't be opened on windows, where the rename is already durable
+            logger.log(DEBUG, "Unable to sync directory ''{0}''", directory);
+        }
+    }
+
+    private static ByteBuffer[] toArray(List<Span> spans) {
+        ByteBuffer[] data = new ByteBuffer[spans.size()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = spans.get(i).data();
+        }
+        return data;
+    }
 
+    private static long write(WritableByteChannel channel, ByteBuffer[] data) throws IOException {
+        long length = 0;
+        for (ByteBuffer b : data) {
+            length += b.remaining();
+        }
+        if (channel instanceof GatheringByteChannel gathering) {
+            long remaining = length;
+            while (remaining > 0) {
+                remaining -= gathering.write(data);
+            }
+        } else {
+            for (ByteBuffer b : data) {
+                while (b.hasRemaining()) {
+                    channel.write(b);
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Replaces the 4 bytes of the crc by a zeroed buffer of its own, splitting the spans around it
+     *
+     * @return the buffer holding the crc
+     */
+    private ByteBuffer splitCrcField(List<Span> spans) {
+        int crcOffset = getCrcOffset();
+        ByteBuffer crcField = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        List<Span> ret = new ArrayList<>(spans.size() + 2);
+        boolean found = false;
+        int position = 0;
+        for (Span span : spans) {
+            ByteBuffer b = span.data();
+            int start = position;
+            int end = position + b.remaining();
+            position = end;
+            if (end <= crcOffset || start >= crcOffset + 4) {
+                ret.add(span);
+                continue;
+            }
+            if (start < crcOffset) {
+                ret.add(new Span(b.slice(b.position(), crcOffset - start), span.sourceOffset()));
+            }
+            if (start <= crcOffset) {
+                ret.add(new Span(crcField, -1));
+                found = true;
+            }
+            if (end > crcOffset + 4) {
+                int skip = crcOffset + 4 - start;
+                ret.add(new Span(b.slice(b.position() + skip, end - start - skip),
+                        span.sourceOffset() < 0 ? -1 : span.sourceOffset() + skip));
+            }
+        }
+        if (!found) {
+            throw new IllegalStateException("crc offset outside of file");
+        }
+        spans.clear();
+        spans.addAll(ret);
+        return crcField;
+    }
+
+    /**
+     * crc of the spans, the crc of the unchanged spans is combined from the crc index of the source buffer
+     */
+    private static int calculateCRC32(List<Span> spans, Save save) {
+        int crc32 = 0;
+        for (Span span : spans) {
+            int length = span.data().remaining();
+            int crc = span.sourceOffset() < 0 ? Crc32.of(span.data())
+                    : save.crcIndex().crc(span.sourceOffset(), span.sourceOffset() + length);
+            crc32 = Crc32.combine(crc32, crc, length);
+        }
         return crc32;
     }
+
+    public int calculateCRC32(ByteBuffer buffer) {
+        return Crc32.of(buffer.duplicate().limit(buffer.capacity()));
+    }
 }
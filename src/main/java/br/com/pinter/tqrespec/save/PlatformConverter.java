@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import br.com.pinter.tqrespec.save.player.PlayerFileVariable;
+import br.com.pinter.tqrespec.tqdata.GameVersion;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Converts a player savegame between platforms in a single pass over the original buffer.
+ * <p>
+ * The conversion is computed as a list of byte edits (strings re-encoded between UTF-16 and UTF-32, platform
+ * specific variables dropped or added, header values adjusted), merged with the changes staged in the
+ * {@link FileDataMap} and streamed to the output as segments of the original buffer and of the edits. The data
+ * map isn't modified.
+ */
+public final class PlatformConverter {
+    private static final Set<String> WINDOWS_ONLY = Set.of("boostedCharacterForX4", "tartarusDefeatedCount[i]",
+            "hasSkillServices", "version");
+    private static final Set<String> MOBILE_ONLY = Set.of("mySaveId", "currentDifficulty");
+    private static final int MOBILE_PLAYER_VERSION = 5;
+
+    private final FileDataMap fileDataMap;
+    private final ByteBuffer source;
+    private final Platform target;
+    private final Map<Integer, Edit> edits = new HashMap<>();
+    private String playerName;
+    private String saveId;
+
+    private record Edit(int offset, int skip, byte[] data) {
+    }
+
+    public PlatformConverter(FileDataMap fileDataMap, ByteBuffer source, Platform target) {
+        this.fileDataMap = fileDataMap;
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * New value for myPlayerName in the converted file
+     */
+    public PlatformConverter playerName(String playerName) {
+        this.playerName = playerName;
+        return this;
+    }
+
+    /**
+     * mySaveId to add when converting to mobile
+     */
+    public PlatformConverter saveId(String saveId) {
+        this.saveId = saveId;
+        return this;
+    }
+
+    /**
+     * Converted file in a single buffer
+     */
+    public ByteBuffer convert() {
+        List<ByteBuffer> segments = segments();
+        int length = 0;
+        for (ByteBuffer segment : segments) {
+            length += segment.remaining();
+        }
+        ByteBuffer converted = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        for (ByteBuffer segment : segments) {
+            converted.put(segment.duplicate());
+        }
+        return converted.flip();
+    }
+
+    /**
+     * Converted file as consecutive segments: slices of the source buffer between the edits and the data of the
+     * edits. Nothing is copied, the segments are meant to be streamed to the output.
+     */
+    public List<ByteBuffer> segments() {
+        Platform current = fileDataMap.getPlatform();
+        if (current.equals(target)) {
+            throw new IllegalStateException("can't convert to same platform");
+        }
+
+        edits.clear();
+        for (int offset : fileDataMap.changesKeySet()) {
+            edits.put(offset, new Edit(offset, fileDataMap.getPreviousValueLength(offset), fileDataMap.getBytes(offset)));
+        }
+
+        if (current.equals(Platform.WINDOWS) && target.equals(Platform.MOBILE)) {
+            prepareWindowsToMobile();
+        } else if (current.equals(Platform.MOBILE) && target.equals(Platform.WINDOWS)) {
+            prepareMobileToWindows();
+        } else {
+            throw new IllegalArgumentException(String.format("conversion from '%s' to '%s' not supported", current, target));
+        }
+
+        return merge();
+    }
+
+    private void prepareWindowsToMobile() {
+        Map<String, BlockType> removeFrom = new HashMap<>();
+        for (String name : WINDOWS_ONLY) {
+            removeFrom.put(name, PlayerFileVariable.getVar(Platform.WINDOWS, name).location());
+        }
+        Integer playerVersion = fileDataMap.getInt("playerVersion");
+
+        for (BlockInfo block : fileDataMap.getBlockInfo().values()) {
+            for (VariableInfo v : block.getVariables().values()) {
+                if (v.getVariableType().equals(VariableType.STRING_UTF_16_LE)) {
+                    convertString(v, VariableType.STRING_UTF_32_LE);
+                } else if (block.getBlockType().equals(removeFrom.get(v.getName()))) {
+                    removeVariable(v);
+                } else if (v.getName().equals("playerVersion") && playerVersion > MOBILE_PLAYER_VERSION) {
+                    replaceInt(v, MOBILE_PLAYER_VERSION);
+                }
+            }
+        }
+
+        BlockInfo myPlayerNameBlock = fileDataMap.getBlockInfo().get(fileDataMap.getVariableLocation().get("myPlayerName").getFirst());
+        VariableInfo myPlayerName = myPlayerNameBlock.getVariables().get("myPlayerName").getFirst();
+        VariableInfo mySaveId = VariableInfo.builder().name("mySaveId")
+                .blockOffset(myPlayerNameBlock.getStart())
+                .keyOffset(myPlayerName.getKeyOffset())
+                .variableType(VariableType.STRING)
+                .value(saveId).build();
+        insertBefore(myPlayerName.getKeyOffset(), mySaveId);
+    }
+
+    private void prepareMobileToWindows() {
+        BlockInfo numberOfSacksBlock = fileDataMap.getBlockInfo().get(fileDataMap.getVariableLocation().get("numberOfSacks").getFirst());
+        VariableInfo numberOfSacks = numberOfSacksBlock.getVariables().get("numberOfSacks").getFirst();
+        boolean resetSack = (Integer) numberOfSacks.getValue() > 1;
+
+        for (BlockInfo block : fileDataMap.getBlockInfo().values()) {
+            for (VariableInfo v : block.getVariables().values()) {
+                if (MOBILE_ONLY.contains(v.getName())) {
+                    removeVariable(v);
+                } else if (v.getName().equals("headerVersion")) {
+                    replaceInt(v, GameVersion.TQAE.value());
+                } else if (resetSack && block == numberOfSacksBlock
+                        && (v.getName().equals("currentlyFocusedSackNumber") || v.getName().equals("currentlySelectedSackNumber"))) {
+                    replaceInt(v, 1);
+                } else if (v.getVariableType().equals(VariableType.STRING_UTF_32_LE)) {
+                    convertString(v, VariableType.STRING_UTF_16_LE);
+                }
+            }
+        }
+    }
+
+    private void convertString(VariableInfo v, VariableType type) {
+        boolean rename = playerName != null && v.getName().equals("myPlayerName");
+        Edit staged = edits.get(v.getValOffset());
+        if (staged == null && v.getValSize() == 0 && !rename) {
+            return;
+        }
+        replace(v, staged, c -> {
+            VariableInfo ret = copyOf(c, type);
+            if (rename) {
+                ret.setValue(playerName);
+            }
+            return ret;
+        });
+    }
+
+    private void replaceInt(VariableInfo v, int value) {
+        replace(v, edits.get(v.getValOffset()), c -> {
+            VariableInfo ret = copyOf(c, c.getVariableType());
+            ret.setValue(value);
+            return ret;
+        });
+    }
+
+    /**
+     * Replace the value of the variable, applying the mapper to the value staged in the data map if there's one
+     */
+    private void replace(VariableInfo v, Edit staged, UnaryOperator<VariableInfo> mapper) {
+        int offset = v.getValOffset();
+        byte[] data;
+        int skip;
+        if (staged != null && fileDataMap.getChange(offset) instanceof DataChangeVariable dt) {
+            data = dt.data(c -> c.getName().equals(v.getName()) ? mapper.apply(c) : c);
+            skip = staged.skip();
+        } else {
+            data = mapper.apply(v).bytes();
+            skip = v.getValuePrefix() + v.getValBytesLength();
+        }
+        edits.put(offset, new Edit(offset, skip, data));
+    }
+
+    private void removeVariable(VariableInfo v) {
+        int offset = v.getKeyOffset();
+        Edit staged = edits.get(offset);
+        // keep variables inserted before the removed one
+        byte[] data = staged != null ? staged.data() : new byte[0];
+        edits.put(offset, new Edit(offset, v.getVariableBytesLength(), data));
+    }
+
+    private void insertBefore(int offset, VariableInfo variable) {
+        byte[] name = variable.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] key = ByteBuffer.allocate(4 + name.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(name.length).put(name).array();
+        byte[] value = variable.bytes();
+        Edit staged = edits.get(offset);
+        byte[] after = staged != null ? staged.data() : new byte[0];
+        byte[] data = new byte[key.length + value.length + after.length];
+        System.arraycopy(key, 0, data, 0, key.length);
+        System.arraycopy(value, 0, data, key.length, value.length);
+        System.arraycopy(after, 0, data, key.length + value.length, after.length);
+        edits.put(offset, new Edit(offset, staged != null ? staged.skip() : 0, data));
+    }
+
+    private static VariableInfo copyOf(VariableInfo v, VariableType type) {
+        VariableInfo.Builder builder = VariableInfo.builder().name(v.getName())
+                .keyOffset(v.getKeyOffset())
+                .valOffset(v.getValOffset())
+                .blockOffset(v.getBlockOffset())
+                .variableType(type);
+        if (v.isString()) {
+            builder.value(v.getValueString());
+        } else if (v.isInt()) {
+            builder.value((int) v.getValue());
+        } else if (v.isFloat()) {
+            builder.value((float) v.getValue());
+        } else if (v.getValue() != null) {
+            builder.value((byte[]) v.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Split the source buffer at the edits, in offset order. Edits inside a region already replaced by a
+     * previous edit (variables of a removed block or variable) are discarded.
+     */
+    private List<ByteBuffer> merge() {
+        List<Edit> sorted = new ArrayList<>(edits.values());
+        sorted.sort(Comparator.comparingInt(Edit::offset));
+
+        // the array of a pooled buffer may be larger than the file
+        int length = source.capacity();
+        List<ByteBuffer> segments = new ArrayList<>(sorted.size() * 2 + 1);
+        int position = 0;
+        for (Edit e : sorted) {
+            if (e.offset() < position) {
+                continue;
+            }
+            addSegment(segments, source.slice(position, e.offset() - position));
+            addSegment(segments, ByteBuffer.wrap(e.data()));
+            position = e.offset() + e.skip();
+        }
+        addSegment(segments, source.slice(position, length - position));
+        return segments;
+    }
+
+    private static void addSegment(List<ByteBuffer> segments, ByteBuffer segment) {
+        if (segment.hasRemaining()) {
+            segments.add(segment.asReadOnlyBuffer());
+        }
+    }
+}
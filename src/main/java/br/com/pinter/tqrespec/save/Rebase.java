@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Translates changes staged against the content a file was loaded from into changes against the content written
+ * to the file with a set of those changes, so the file can be written again without rendering it from the loaded
+ * content.
+ */
+final class Rebase {
+    private final ByteBuffer original;
+    private final TreeMap<Integer, ChangeJournal.Pending> written;
+    // difference of length accumulated by the written changes up to each offset, inclusive
+    private final TreeMap<Integer, Integer> shift = new TreeMap<>();
+
+    /**
+     * @param original content the file was loaded from
+     * @param written  changes by offset of the original content, the file was written with them
+     */
+    Rebase(ByteBuffer original, Map<Integer, ChangeJournal.Pending> written) {
+        this.original = original;
+        this.written = new TreeMap<>(written);
+        int total = 0;
+        for (Map.Entry<Integer, ChangeJournal.Pending> e : this.written.entrySet()) {
+            total += e.getValue().data().length - e.getValue().previousLength();
+            shift.put(e.getKey(), total);
+        }
+    }
+
+    /**
+     * Offset in the written content of an offset of the original content
+     */
+    int offset(int offset) {
+        Map.Entry<Integer, Integer> e = shift.lowerEntry(offset);
+        return offset + (e != null ? e.getValue() : 0);
+    }
+
+    /**
+     * Whether the change staged at offset replaces bytes other than the ones replaced by the written change at the
+     * same offset, it can't be expressed against the written content then
+     *
+     * @param staged change staged at offset, null if there's none
+     */
+    boolean overlaps(int offset, ChangeJournal.Pending staged) {
+        if (staged == null) {
+            return false;
+        }
+        ChangeJournal.Pending same = written.get(offset);
+        if (same != null) {
+            return same.previousLength() != staged.previousLength();
+        }
+        Map.Entry<Integer, ChangeJournal.Pending> before = written.lowerEntry(offset);
+        if (before != null && before.getKey() + before.getValue().previousLength() > offset) {
+            return true;
+        }
+        Integer after = written.higherKey(offset);
+        return after != null && after < offset + staged.previousLength();
+    }
+
+    /**
+     * Change to apply to the written content for the change staged at offset
+     *
+     * @param staged change staged at offset, null if there's none
+     * @return change at {@link #offset(int)}, null if the written content already has the staged bytes
+     */
+    ChangeJournal.Pending change(int offset, ChangeJournal.Pending staged) {
+        ChangeJournal.Pending same = written.get(offset);
+        if (same == null) {
+            return staged;
+        }
+        if (staged == null) {
+            // reverted to the original bytes
+            byte[] bytes = new byte[same.previousLength()];
+            original.get(offset, bytes);
+            return new ChangeJournal.Pending(same.data().length, bytes);
+        }
+        if (Arrays.equals(same.data(), staged.data())) {
+            return null;
+        }
+        return new ChangeJournal.Pending(same.data().length, staged.data());
+    }
+}
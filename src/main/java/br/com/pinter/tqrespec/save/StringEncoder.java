@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Encodes string values to the layouts used by the savegames, with the length prefix. Accented characters are
+ * replaced by their base character, using a folding table for the BMP computed when the class is loaded.
+ */
+final class StringEncoder {
+    private static final int PREFIX = 4;
+    // folded character for each BMP character
+    private static final char[] FOLD = buildFoldTable();
+
+    private StringEncoder() {
+    }
+
+    private static char[] buildFoldTable() {
+        char[] fold = new char[Character.MAX_VALUE + 1];
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            char c = (char) i;
+            if (c < 0x80 || Character.isSurrogate(c)) {
+                fold[c] = c;
+                continue;
+            }
+            String stripped = StringUtils.stripAccents(Character.toString(c));
+            // a combining mark alone is stripped completely, keep the original character
+            fold[c] = stripped.isEmpty() ? c : stripped.charAt(0);
+        }
+        return fold;
+    }
+
+    static char fold(char c) {
+        return FOLD[c];
+    }
+
+    /**
+     * Encoded length of the value, with the length prefix
+     */
+    static int length(String value, VariableType type) {
+        return PREFIX + value.length() * type.dataTypeSize();
+    }
+
+    /**
+     * Encode the value with the length prefix (number of characters, little endian)
+     *
+     * @param value string to encode
+     * @param type  {@link VariableType#STRING}, {@link VariableType#STRING_UTF_16_LE} or
+     *              {@link VariableType#STRING_UTF_32_LE}
+     */
+    static byte[] encode(String value, VariableType type) {
+        int len = value.length();
+        int size = type.dataTypeSize();
+        byte[] data = new byte[length(value, type)];
+        data[0] = (byte) len;
+        data[1] = (byte) (len >> 8);
+        data[2] = (byte) (len >> 16);
+        data[3] = (byte) (len >> 24);
+
+        int pos = PREFIX;
+        for (int i = 0; i < len; i++) {
+            char c = fold(value.charAt(i));
+            data[pos] = (byte) c;
+            if (size > 1) {
+                // remaining bytes of UTF-32 are left zeroed
+                data[pos + 1] = (byte) (c >> 8);
+            }
+            pos += size;
+        }
+        return data;
+    }
+
+    /**
+     * Decode a value encoded by {@link #encode(String, VariableType)}
+     *
+     * @return null if the data isn't a complete value of the type
+     */
+    static String decode(byte[] data, VariableType type) {
+        if (data.length < PREFIX) {
+            return null;
+        }
+        int len = (data[0] & 0xff) | (data[1] & 0xff) << 8 | (data[2] & 0xff) << 16 | (data[3] & 0xff) << 24;
+        int size = type.dataTypeSize();
+        if (len < 0 || (long) len * size != data.length - PREFIX) {
+            return null;
+        }
+
+        char[] value = new char[len];
+        int pos = PREFIX;
+        for (int i = 0; i < len; i++) {
+            value[i] = (char) (size > 1 ? (data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8 : data[pos] & 0xff);
+            pos += size;
+        }
+        return new String(value);
+    }
+}
@@ -22,87 +22,97 @@ package br.com.pinter.tqrespec.save;
 
 import org.apache.commons.lang3.StringUtils;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
-import java.util.Objects;
 
+/**
+ * 128 bit uid as stored in the savegame. The 16 bytes are kept as two little endian longs, so comparing and hashing
+ * never touch the string form "%d-%d-%d-%d", which is only built when requested.
+ */
 public class UID {
-    private final String value;
+    private static final int SIZE = 16;
+    private final long low;
+    private final long high;
+    private String value;
 
     public UID(String value) {
-        if (value == null || value.isBlank() || value.replaceAll("-", "").matches("^0+$")) {
+        this(parseString(value));
+    }
+
+    public UID(byte[] value) {
+        if (value == null) {
+            throw new IllegalArgumentException("invalid uid");
+        }
+        byte[] uid = value.length == SIZE ? value : Arrays.copyOf(value, SIZE);
+        this.low = readLong(uid, 0);
+        this.high = readLong(uid, 8);
+        if (high == 0 && low == 0) {
             throw new IllegalArgumentException("invalid uid");
         }
-        this.value = value;
     }
 
-    public UID(byte[] value) {
-        this.value = convertUidByteToString(value);
-        if (this.value == null || this.value.isBlank() || this.value.replaceAll("-", "").matches("^0+$")) {
+    private static byte[] parseString(String value) {
+        if (StringUtils.isBlank(value)) {
             throw new IllegalArgumentException("invalid uid");
         }
+        String[] p = StringUtils.split(value, "-");
+        if (p.length != 4) {
+            throw new IllegalArgumentException("invalid uid");
+        }
+        byte[] ret = new byte[SIZE];
+        try {
+            // first part of the string is the last int in the file
+            writeLong(ret, 8, (Long.parseLong(p[0].trim()) << 32) | (Long.parseLong(p[1].trim()) & 0xFFFFFFFFL));
+            writeLong(ret, 0, (Long.parseLong(p[2].trim()) << 32) | (Long.parseLong(p[3].trim()) & 0xFFFFFFFFL));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid uid", e);
+        }
+        return ret;
+    }
+
+    private static long readLong(byte[] b, int offset) {
+        long ret = 0;
+        for (int i = 7; i >= 0; i--) {
+            ret = (ret << 8) | (b[offset + i] & 0xFFL);
+        }
+        return ret;
+    }
+
+    private static void writeLong(byte[] b, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            b[offset + i] = (byte) (value >>> (8 * i));
+        }
     }
 
     public static String convertUidByteToString(byte[] uid) {
-        ByteBuffer uidP1 = ByteBuffer.wrap(Arrays.copyOfRange(uid, 0, 4)).order(ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer uidP2 = ByteBuffer.wrap(Arrays.copyOfRange(uid, 4, 8)).order(ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer uidP3 = ByteBuffer.wrap(Arrays.copyOfRange(uid, 8, 12)).order(ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer uidP4 = ByteBuffer.wrap(Arrays.copyOfRange(uid, 12, 16)).order(ByteOrder.LITTLE_ENDIAN);
-
-        int p4 = uidP4.getInt();
-        int p3 = uidP3.getInt();
-        int p2 = uidP2.getInt();
-        int p1 = uidP1.getInt();
-
-        String uidStr = String.format("%d-%d-%d-%d",
-                p4 & 0xFFFFFFFFL,
-                p3 & 0xFFFFFFFFL,
-                p2 & 0xFFFFFFFFL,
-                p1 & 0xFFFFFFFFL);
-
-        if ("0-0-0-0".equals(uidStr) || StringUtils.isBlank(uidStr)) {
+        try {
+            return new UID(uid).getUid();
+        } catch (IllegalArgumentException e) {
             return null;
         }
-        return uidStr;
     }
 
     public static byte[] convertUidStringToByte(String uid) {
         if (StringUtils.isBlank(uid)) {
             return new byte[0];
         }
-
-        String[] p = StringUtils.split(uid, "-");
-        long p4 = Long.parseLong(p[3]);
-        long p3 = Long.parseLong(p[2]);
-        long p2 = Long.parseLong(p[1]);
-        long p1 = Long.parseLong(p[0]);
-
-        ByteBuffer uidP4 = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer uidP3 = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer uidP2 = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer uidP1 = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-
-        uidP4.putInt((int) (p4));
-        uidP3.putInt((int) p3);
-        uidP2.putInt((int) p2);
-        uidP1.putInt((int) p1);
-
-        byte[] ret = new byte[16];
-        System.arraycopy(uidP4.array(), 0, ret, 0, 4);
-        System.arraycopy(uidP3.array(), 0, ret, 4, 4);
-        System.arraycopy(uidP2.array(), 0, ret, 8, 4);
-        System.arraycopy(uidP1.array(), 0, ret, 12, 4);
-
-        return ret;
+        return parseString(uid);
     }
 
     public byte[] getBytes() {
-        return convertUidStringToByte(value);
+        byte[] ret = new byte[SIZE];
+        writeLong(ret, 0, low);
+        writeLong(ret, 8, high);
+        return ret;
     }
 
     public String getUid() {
-        return value;
+        String ret = value;
+        if (ret == null) {
+            ret = Integer.toUnsignedString((int) (high >>> 32)) + "-" + Integer.toUnsignedString((int) high)
+                    + "-" + Integer.toUnsignedString((int) (low >>> 32)) + "-" + Integer.toUnsignedString((int) low);
+            value = ret;
+        }
+        return ret;
     }
 
     @Override
@@ -110,18 +120,18 @@ public class UID {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         UID uid = (UID) o;
-        return value.equals(uid.value);
+        return low == uid.low && high == uid.high;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return 31 * Long.hashCode(high) + Long.hashCode(low);
     }
 
     @Override
     public String toString() {
         return "UID{" +
-                "value='" + value + '\'' +
+                "value='" + getUid() + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+/**
+ * Pre-resolved reference to a variable of a {@link FileDataMap}, used by the primitive accessors
+ * {@link FileDataMap#readInt(VariableHandle)} and {@link FileDataMap#writeInt(VariableHandle, int)}.
+ * The handle keeps the value currently staged for the variable, so reads don't need any lookup.
+ * A handle is valid until the blocks of the map it was obtained from are replaced.
+ */
+public final class VariableHandle {
+    private final Object owner;
+    private final VariableInfo variable;
+    private volatile VariableInfo staged;
+    private volatile DataChangeVariable stagedChange;
+    private volatile boolean resolved = true;
+
+    VariableHandle(Object owner, VariableInfo variable) {
+        this.owner = owner;
+        this.variable = variable;
+    }
+
+    Object getOwner() {
+        return owner;
+    }
+
+    public VariableInfo getVariable() {
+        return variable;
+    }
+
+    VariableInfo getStaged() {
+        return staged;
+    }
+
+    boolean isResolved() {
+        return resolved;
+    }
+
+    DataChangeVariable getStagedChange() {
+        return stagedChange;
+    }
+
+    VariableInfo current() {
+        VariableInfo v = staged;
+        return v != null ? v : variable;
+    }
+
+    void stage(DataChange change) {
+        if (change == null) {
+            staged = null;
+            stagedChange = null;
+            resolved = true;
+        } else if (change instanceof DataChangeVariable dt && dt.getVariable(variable) != null) {
+            staged = dt.getVariable(variable);
+            stagedChange = dt;
+            resolved = true;
+        } else {
+            // not representable as a single value, use the regular lookup
+            unresolve();
+        }
+    }
+
+    void unresolve() {
+        staged = null;
+        stagedChange = null;
+        resolved = false;
+    }
+
+    @Override
+    public String toString() {
+        return "VariableHandle{" +
+                "variable=" + variable +
+                ", staged=" + staged +
+                '}';
+    }
+}
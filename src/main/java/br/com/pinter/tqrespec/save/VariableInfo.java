@@ -267,41 +267,13 @@ public class VariableInfo implements DeepCloneable, Serializable {
         return String.format("name={%s}; alias={%s}; value={%s}; keyOffset={%d}, valOffset={%d}; valSize={%d}; variableType: {%s}", this.name, alias, this.getValueString(), this.keyOffset, this.valOffset, this.valSize, variableType);
     }
 
-    private byte[] encodeString() {
-        //allocate the number of characters * 2 so the buffer can hold the '0'
-        ByteBuffer buffer = ByteBuffer.allocate(valueString.length() * variableType.dataTypeSize());
-
-        for (char o : valueString.toCharArray()) {
-            char c = StringUtils.stripAccents(Character.toString(o)).toCharArray()[0];
-
-            if (!variableType.equals(VariableType.STRING)) {
-                byte n1 = (byte) (c & 0xFF);
-                byte n2 = (byte) (c >> 8);
-
-                if (variableType.equals(VariableType.STRING_UTF_16_LE)) {
-                    buffer.put(new byte[]{n1, n2});
-                } else if (variableType.equals(VariableType.STRING_UTF_32_LE)) {
-                    buffer.put(new byte[]{n1, n2, 0, 0});
-                }
-            } else {
-                buffer.put(new byte[]{(byte) c});
-            }
-        }
-        return buffer.array();
-    }
-
     public byte[] bytes() {
         if (variableType.equals(VariableType.INTEGER)) {
             return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(valueInteger).array();
         } else if (variableType.equals(VariableType.FLOAT)) {
             return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(valueFloat).array();
         } else if (variableType.equals(VariableType.STRING) || variableType.equals(VariableType.STRING_UTF_16_LE) || variableType.equals(VariableType.STRING_UTF_32_LE)) {
-            byte[] str = encodeString();
-            byte[] len = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(valueString.length()).array();
-            byte[] data = new byte[4 + str.length];
-            System.arraycopy(len, 0, data, 0, len.length);
-            System.arraycopy(str, 0, data, len.length, str.length);
-            return data;
+            return StringEncoder.encode(valueString, variableType);
         } else if (variableType.equals(VariableType.UID) || variableType.equals(VariableType.STREAM)) {
             return valueByteArray;
         }
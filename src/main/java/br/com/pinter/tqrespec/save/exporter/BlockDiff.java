@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.exporter;
+
+import br.com.pinter.tqrespec.logging.Log;
+import br.com.pinter.tqrespec.save.BlockInfo;
+import br.com.pinter.tqrespec.save.FileParser;
+import br.com.pinter.tqrespec.save.VariableInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static java.lang.System.Logger.Level.DEBUG;
+
+/**
+ * Compares the block trees of two parsed files.
+ * <p>
+ * Blocks are aligned by their position in the tree, not by raw offsets: siblings with identical content are paired
+ * first (so an inserted or removed block doesn't shift everything after it), then the remaining siblings are paired
+ * by signature (block type and first variable name) in file order. Identical subtrees are skipped by comparing
+ * content hashes, and only blocks that really changed have their variables compared.
+ */
+public class BlockDiff {
+    private static final System.Logger logger = Log.getLogger(BlockDiff.class);
+
+    private final Tree left;
+    private final Tree right;
+    private List<Difference> differences;
+
+    public BlockDiff(FileParser left, FileParser right) {
+        this.left = new Tree(left.getBlockInfo(), left.getBuffer());
+        this.right = new Tree(right.getBlockInfo(), right.getBuffer());
+    }
+
+    public List<Difference> getDifferences() {
+        if (differences == null) {
+            long start = System.nanoTime();
+            List<Difference> found = new ArrayList<>();
+            if (left.buffer.mismatch(right.buffer) != -1) {
+                compareVariables(left.blocks.get(0), right.blocks.get(0), found);
+                alignChildren(left.rootBlocks, right.rootBlocks, found);
+            }
+            differences = ImmutableList.copyOf(found);
+            logger.log(DEBUG, "{0} differences found in {1}ms", differences.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        return differences;
+    }
+
+    public void writeJson(File filename) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.writerWithDefaultPrettyPrinter().writeValue(filename, getDifferences());
+    }
+
+    private void compareBlock(BlockInfo l, BlockInfo r, List<Difference> found) {
+        if (left.contentKey(l) == right.contentKey(r) && left.content(l).mismatch(right.content(r)) == -1) {
+            return;
+        }
+        compareVariables(l, r, found);
+        alignChildren(left.children(l), right.children(r), found);
+    }
+
+    private void alignChildren(List<BlockInfo> leftChildren, List<BlockInfo> rightChildren, List<Difference> found) {
+        Map<Long, Deque<BlockInfo>> rightByContent = new HashMap<>();
+        for (BlockInfo r : rightChildren) {
+            rightByContent.computeIfAbsent(right.contentKey(r), k -> new ArrayDeque<>()).add(r);
+        }
+
+        Set<BlockInfo> paired = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<BlockInfo> pendingLeft = new ArrayList<>();
+        for (BlockInfo l : leftChildren) {
+            BlockInfo identical = null;
+            Deque<BlockInfo> candidates = rightByContent.get(left.contentKey(l));
+            if (candidates != null) {
+                for (BlockInfo r : candidates) {
+                    if (left.content(l).mismatch(right.content(r)) == -1) {
+                        identical = r;
+                        break;
+                    }
+                }
+            }
+            if (identical != null) {
+                candidates.remove(identical);
+                paired.add(identical);
+            } else {
+                pendingLeft.add(l);
+            }
+        }
+
+        Map<String, Deque<BlockInfo>> rightBySignature = new LinkedHashMap<>();
+        for (BlockInfo r : rightChildren) {
+            if (!paired.contains(r)) {
+                rightBySignature.computeIfAbsent(signature(r), k -> new ArrayDeque<>()).add(r);
+            }
+        }
+
+        for (BlockInfo l : pendingLeft) {
+            Deque<BlockInfo> candidates = rightBySignature.get(signature(l));
+            BlockInfo r = candidates != null ? candidates.poll() : null;
+            if (r != null) {
+                compareBlock(l, r, found);
+            } else {
+                found.add(new Difference(Difference.Kind.REMOVED, l.getPath(), l, null, null, 0));
+            }
+        }
+
+        for (Deque<BlockInfo> unpaired : rightBySignature.values()) {
+            for (BlockInfo r : unpaired) {
+                found.add(new Difference(Difference.Kind.ADDED, r.getPath(), r, null, null, 0));
+            }
+        }
+    }
+
+    private void compareVariables(BlockInfo l, BlockInfo r, List<Difference> found) {
+        if (l == null || r == null) {
+            return;
+        }
+        for (String name : l.getVariables().keySet()) {
+            List<VariableInfo> lv = l.getVariables().get(name);
+            List<VariableInfo> rv = r.getVariables().get(name);
+            for (int i = 0; i < Math.max(lv.size(), rv.size()); i++) {
+                if (i >= rv.size()) {
+                    found.add(new Difference(Difference.Kind.REMOVED, l.getPath(), l, lv.get(i), null, i));
+                } else if (i >= lv.size()) {
+                    found.add(new Difference(Difference.Kind.ADDED, r.getPath(), r, null, rv.get(i), i));
+                } else if (!Objects.deepEquals(lv.get(i).getValue(), rv.get(i).getValue())) {
+                    found.add(new Difference(Difference.Kind.CHANGED, l.getPath(), r, lv.get(i), rv.get(i), i));
+                }
+            }
+        }
+        for (String name : r.getVariables().keySet()) {
+            if (!l.getVariables().containsKey(name)) {
+                List<VariableInfo> rv = r.getVariables().get(name);
+                for (int i = 0; i < rv.size(); i++) {
+                    found.add(new Difference(Difference.Kind.ADDED, r.getPath(), r, null, rv.get(i), i));
+                }
+            }
+        }
+    }
+
+    private static String signature(BlockInfo block) {
+        if (block.getVariables().isEmpty()) {
+            return block.getBlockType().toString();
+        }
+        return block.getBlockType() + ":" + block.getVariables().keySet().iterator().next();
+    }
+
+    private static class Tree {
+        private final Map<Integer, BlockInfo> blocks;
+        private final ByteBuffer buffer;
+        private final List<BlockInfo> rootBlocks;
+        private final Map<Integer, Long> contentKeys = new HashMap<>();
+
+        Tree(Map<Integer, BlockInfo> blocks, ByteBuffer buffer) {
+            this.blocks = blocks;
+            this.buffer = buffer.duplicate().rewind();
+            // block 0 is the header (or the outermost block), its children are compared with the top level blocks
+            List<BlockInfo> roots = new ArrayList<>(blocks.values().stream()
+                    .filter(b -> b.getParentOffset() == -1 && b.getStart() != 0).toList());
+            if (blocks.containsKey(0)) {
+                roots.addAll(children(blocks.get(0)));
+            }
+            roots.sort(Comparator.comparing(BlockInfo::getStart));
+            this.rootBlocks = roots;
+        }
+
+        List<BlockInfo> children(BlockInfo block) {
+            return block.getChildren().stream().map(blocks::get).toList();
+        }
+
+        ByteBuffer content(BlockInfo block) {
+            return buffer.slice(block.getStart(), block.getSize());
+        }
+
+        /**
+         * CRC32 of the block contents in the upper 32 bits and block size in the lower 32 bits
+         */
+        long contentKey(BlockInfo block) {
+            return contentKeys.computeIfAbsent(block.getStart(), k -> {
+                CRC32 crc = new CRC32();
+                crc.update(content(block));
+                return crc.getValue() << 32 | block.getSize();
+            });
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.exporter;
+
+import br.com.pinter.tqrespec.save.BlockInfo;
+import br.com.pinter.tqrespec.save.VariableInfo;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A single difference found by {@link BlockDiff}. Variable differences carry the left and/or right variable,
+ * block differences (a whole block added or removed) carry the block only.
+ */
+@JsonSerialize(using = DifferenceSerializer.class)
+public class Difference {
+    private final Kind kind;
+    private final String path;
+    private final int index;
+    private final BlockInfo block;
+    private final VariableInfo left;
+    private final VariableInfo right;
+
+    public enum Kind {
+        ADDED,
+        REMOVED,
+        CHANGED
+    }
+
+    Difference(Kind kind, String path, BlockInfo block, VariableInfo left, VariableInfo right, int index) {
+        this.kind = kind;
+        this.path = path;
+        this.index = index;
+        this.block = block;
+        this.left = left;
+        this.right = right;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Path of the block in the tree, see {@link BlockInfo#getPath()}
+     *
+     * @return block path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Occurrence of the variable name inside the block, variables like teleportUID repeat many times
+     *
+     * @return index of the variable among the ones with the same name
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public BlockInfo getBlock() {
+        return block;
+    }
+
+    public VariableInfo getLeft() {
+        return left;
+    }
+
+    public VariableInfo getRight() {
+        return right;
+    }
+
+    public boolean isBlock() {
+        return left == null && right == null;
+    }
+
+    public String getName() {
+        if (isBlock()) {
+            return null;
+        }
+        return left != null ? left.getName() : right.getName();
+    }
+
+    @Override
+    public String toString() {
+        return "Difference{" +
+                "kind=" + kind +
+                ", path='" + path + '\'' +
+                ", name='" + getName() + '\'' +
+                ", index=" + index +
+                ", left=" + (left != null ? left.getValueString() : null) +
+                ", right=" + (right != null ? right.getValueString() : null) +
+                '}';
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.exporter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+public class DifferenceSerializer extends JsonSerializer<Difference> {
+    @Override
+    public void serialize(Difference difference, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("kind", difference.getKind().toString());
+        gen.writeStringField("path", difference.getPath());
+        if (difference.isBlock()) {
+            gen.writeFieldName("$metadata");
+            serializers.defaultSerializeValue(difference.getBlock(), gen);
+        } else {
+            gen.writeStringField("variable", difference.getName());
+            gen.writeNumberField("index", difference.getIndex());
+            if (difference.getLeft() != null) {
+                NodeSerializer.writeField(gen, "left", difference.getLeft());
+            }
+            if (difference.getRight() != null) {
+                NodeSerializer.writeField(gen, "right", difference.getRight());
+            }
+        }
+        gen.writeEndObject();
+    }
+}
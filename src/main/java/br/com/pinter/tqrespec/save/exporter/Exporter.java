@@ -30,20 +30,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 public class Exporter {
     private final File filename;
     private final FileDataMap fileDataMap;
-    private final Map<Integer, List<Integer>> children;
 
     public Exporter(File filename, FileDataMap fileDataMap) {
         this.filename = filename;
         this.fileDataMap = fileDataMap;
-        this.children = new HashMap<>();
     }
 
     public void writeJson() throws IOException {
@@ -56,11 +52,6 @@ public class Exporter {
         List<BlockInfo> rootBlocks = fileDataMap.getBlockInfo().values()
                 .stream().filter(f -> f.getParentOffset() == -1).sorted(Comparator.comparing(BlockInfo::getStart)).toList();
 
-        for (BlockInfo b : fileDataMap.getBlockInfo().values()) {
-            children.computeIfAbsent(b.getParentOffset(), k -> new ArrayList<>());
-            children.get(b.getParentOffset()).add(b.getStart());
-        }
-
         Node root;
         if (fileDataMap.getBlockInfo().containsKey(0)) {
             root = new Node(fileDataMap.getBlockInfo().get(0));
@@ -89,15 +80,12 @@ public class Exporter {
             ret.add(new Node(v));
         }
 
-        if (children.containsKey(b.getStart())) {
-            for (Integer c : children.get(b.getStart())) {
-                BlockInfo currentBlock = fileDataMap.getBlockInfo().get(c);
-                Node currentNode = new Node(currentBlock);
-                currentNode.getChildren().addAll(childNodes(currentBlock));
-                Collections.sort(currentNode.getChildren());
-                ret.add(currentNode);
-
-            }
+        for (Integer c : b.getChildren()) {
+            BlockInfo currentBlock = fileDataMap.getBlockInfo().get(c);
+            Node currentNode = new Node(currentBlock);
+            currentNode.getChildren().addAll(childNodes(currentBlock));
+            Collections.sort(currentNode.getChildren());
+            ret.add(currentNode);
         }
         return ret;
     }
@@ -30,14 +30,18 @@ import java.util.Collections;
 
 public class NodeSerializer extends JsonSerializer<Node> {
     private void writeField(JsonGenerator gen, VariableInfo v) throws IOException {
+        writeField(gen, v.getName(), v);
+    }
+
+    static void writeField(JsonGenerator gen, String fieldName, VariableInfo v) throws IOException {
         if (v.isInt()) {
-            gen.writeNumberField(v.getName(), (Integer) v.getValue());
+            gen.writeNumberField(fieldName, (Integer) v.getValue());
         } else if (v.isFloat()) {
-            gen.writeNumberField(v.getName(), (Float) v.getValue());
+            gen.writeNumberField(fieldName, (Float) v.getValue());
         } else if (v.isString() || v.isUid()) {
-            gen.writeStringField(v.getName(), v.getValueString());
+            gen.writeStringField(fieldName, v.getValueString());
         } else if (v.isStream()) {
-            gen.writeBinaryField(v.getName(), (byte[]) v.getValue());
+            gen.writeBinaryField(fieldName, (byte[]) v.getValue());
         }
     }
 
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.Settings;
+import br.com.pinter.tqrespec.core.State;
+import br.com.pinter.tqrespec.logging.Log;
+import br.com.pinter.tqrespec.save.ChangeJournal;
+import br.com.pinter.tqrespec.save.FileDataMap;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Saves the character being edited in the background, after the changes stop for a quiet period. The changes
+ * staged until then are written together, and never while the game is running. The character is backed up
+ * before the first save. The bytes of each change are copied by the thread staging it, the background save
+ * never reads the data being edited.
+ */
+@Singleton
+public class AutoSaver {
+    private static final System.Logger logger = Log.getLogger(AutoSaver.class);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "autosave");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Inject
+    private CurrentPlayerData saveData;
+
+    private long quietPeriod = Duration.ofSeconds(3).toNanos();
+    private long maxDelay = Duration.ofSeconds(30).toNanos();
+    private Watch watch;
+    private long changes;
+    private long writes;
+    private long failures;
+    private long coalesced;
+
+    /**
+     * Character being watched and its changes not saved yet
+     */
+    private static final class Watch {
+        private final EditSession session;
+        // changes staged, copied from the staging thread
+        private final Map<Integer, ChangeJournal.Pending> staged;
+        private PlayerWriter.Backup backup;
+        private boolean backedUp;
+        private int pending;
+        private long first;
+        private long last;
+        private ScheduledFuture<?> task;
+        private boolean writing;
+        private volatile boolean stopped;
+
+        private Watch(EditSession session, PlayerWriter.Backup backup, Map<Integer, ChangeJournal.Pending> staged) {
+            this.session = session;
+            this.backup = backup;
+            this.staged = staged;
+        }
+    }
+
+    public synchronized Duration getQuietPeriod() {
+        return Duration.ofNanos(quietPeriod);
+    }
+
+    /**
+     * Time without changes before the character is saved
+     */
+    public synchronized void setQuietPeriod(Duration quietPeriod) {
+        if (quietPeriod.isNegative() || quietPeriod.isZero()) {
+            throw new IllegalArgumentException("quiet period must be positive");
+        }
+        this.quietPeriod = quietPeriod.toNanos();
+    }
+
+    public synchronized Duration getMaxDelay() {
+        return Duration.ofNanos(maxDelay);
+    }
+
+    /**
+     * Longest time a change waits to be saved while the character keeps being edited
+     */
+    public synchronized void setMaxDelay(Duration maxDelay) {
+        if (maxDelay.isNegative() || maxDelay.isZero()) {
+            throw new IllegalArgumentException("max delay must be positive");
+        }
+        this.maxDelay = maxDelay.toNanos();
+    }
+
+    /**
+     * Changes staged while watching
+     */
+    public synchronized long getChanges() {
+        return changes;
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Writes avoided by saving many changes at once: each change would be a write without the quiet period
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Start saving the current character in the background. Must be called from the thread staging the
+     * changes. Changes not saved yet of the character watched before are left staged.
+     *
+     * @param backup backup of the current character, created before its first save
+     */
+    public synchronized void watch(PlayerWriter.Backup backup) {
+        EditSession session = saveData.getSession();
+        if (watch != null && watch.session == session) {
+            return;
+        }
+        stop();
+        if (!session.isLoaded()) {
+            return;
+        }
+        FileDataMap dataMap = session.getDataMap();
+        Watch w = new Watch(session, backup, dataMap.getStagedChanges());
+        dataMap.setChangeListener((offset, change) -> changed(w, offset, change));
+        watch = w;
+        if (!w.staged.isEmpty()) {
+            // changes restored from a previous run
+            schedule(w);
+        }
+        logger.log(DEBUG, "Saving ''{0}'' in background", session.getPlayerChr());
+    }
+
+    /**
+     * Stop saving in the background. Changes not saved yet are left staged, to be saved or discarded by the
+     * caller.
+     */
+    public synchronized void stop() {
+        Watch w = watch;
+        if (w == null) {
+            return;
+        }
+        watch = null;
+        w.session.getDataMap().setChangeListener(null);
+        w.stopped = true;
+        w.pending = 0;
+        if (w.task != null) {
+            w.task.cancel(false);
+            w.task = null;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Wait for a background save in progress to finish. Blocks, must not be called from the FX thread.
+     */
+    public void awaitIdle() {
+        try {
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Wait for the changes staged on the character watched to be saved, or for the save to fail
+     *
+     * @return false if the timeout elapsed first
+     */
+    synchronized boolean awaitSaved(Duration timeout) throws InterruptedException {
+        long end = System.nanoTime() + timeout.toNanos();
+        while (watch != null && (watch.task != null || watch.writing)) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    // called by the thread staging the change, usually the FX thread: copies the change and schedules the save
+    private synchronized void changed(Watch w, int offset, ChangeJournal.Pending change) {
+        if (w.stopped) {
+            return;
+        }
+        if (change == null) {
+            w.staged.remove(offset);
+        } else {
+            w.staged.put(offset, change);
+        }
+        changes++;
+        schedule(w);
+    }
+
+    private void schedule(Watch w) {
+        long now = System.nanoTime();
+        w.pending++;
+        w.last = now;
+        if (w.task == null) {
+            w.first = now;
+            w.task = executor.schedule(() -> run(w), quietPeriod, NANOSECONDS);
+        }
+    }
+
+    private void run(Watch w) {
+        int covered;
+        Map<Integer, ChangeJournal.Pending> staged;
+        synchronized (this) {
+            if (w.stopped) {
+                return;
+            }
+            long now = System.nanoTime();
+            long quiet = now - w.last;
+            long waited = now - w.first;
+            if (quiet < quietPeriod && waited < maxDelay) {
+                w.task = executor.schedule(() -> run(w), Math.min(quietPeriod - quiet, maxDelay - waited), NANOSECONDS);
+                return;
+            }
+            if (State.get().isGameRunning() || State.get().isSaveInProgress()) {
+                w.task = executor.schedule(() -> run(w), quietPeriod, NANOSECONDS);
+                return;
+            }
+            covered = w.pending;
+            w.pending = 0;
+            w.task = null;
+            w.writing = true;
+            staged = new HashMap<>(w.staged);
+        }
+        write(w, staged, covered);
+    }
+
+    private void write(Watch w, Map<Integer, ChangeJournal.Pending> staged, int covered) {
+        EditSession session = w.session;
+        boolean saved = false;
+        boolean stopped = false;
+        // only the snapshot is taken under the session lock, releasing or clearing the session doesn't wait
+        EditSession.Snapshot snapshot = session.beginWrite();
+        try {
+            if (w.stopped) {
+                // the changes were left to the caller meanwhile
+                stopped = true;
+            } else if (snapshot == null || State.get().isGameRunning()) {
+                logger.log(DEBUG, "Character ''{0}'' not saved in background, unloaded or game running", session.getPlayerChr());
+            } else if (!backup(w)) {
+                logger.log(ERROR, "Unable to backup ''{0}'', not saved in background", session.getPlayerChr());
+            } else {
+                EditSession.Written written;
+                try {
+                    written = DetachedWriter.write(snapshot, staged, session.isStale(), Settings.getVerifySave());
+                } catch (IOException | RuntimeException e) {
+                    synchronized (this) {
+                        session.abortWrite(snapshot, w.staged);
+                    }
+                    throw e;
+                }
+                // changes staged during the write are recorded by the new journal, the listener holds this lock
+                synchronized (this) {
+                    session.commitWrite(snapshot, written, w.staged);
+                }
+                saved = true;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(ERROR, "Error saving in background: " + session.getPlayerChr(), e);
+        } finally {
+            if (snapshot != null) {
+                session.endWrite();
+            }
+        }
+        synchronized (this) {
+            w.writing = false;
+            if (saved) {
+                writes++;
+                coalesced += covered - 1;
+                logger.log(DEBUG, "Saved ''{0}'' in background, {1} changes in one write", session.getPlayerChr(), covered);
+            } else if (!stopped) {
+                failures++;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Create the backup before the first save of the character, a backup that failed isn't tried again
+     */
+    private static boolean backup(Watch w) throws IOException {
+        if (w.backup != null) {
+            PlayerWriter.Backup backup = w.backup;
+            w.backup = null;
+            w.backedUp = backup.create();
+        }
+        return w.backedUp;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.Settings;
+import br.com.pinter.tqrespec.core.State;
+import br.com.pinter.tqrespec.logging.Log;
+import br.com.pinter.tqrespec.tqdata.Db;
+import br.com.pinter.tqrespec.tqdata.GameInfo;
+import br.com.pinter.tqrespec.tqdata.PlayerCharacterFile;
+import br.com.pinter.tqrespec.tqdata.Txt;
+import br.com.pinter.tqrespec.util.Constants;
+import com.google.inject.Inject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * Applies the same edit to many characters. The characters are loaded, edited and written in parallel, each file
+ * by a single task in that order. The original content of every changed character is stored in one backup archive
+ * before the first file is written.
+ */
+public class BatchWriter {
+    private static final System.Logger logger = Log.getLogger(BatchWriter.class);
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    @Inject
+    private GameInfo gameInfo;
+
+    @Inject
+    private CurrentPlayerData saveData;
+
+    @Inject
+    private Db db;
+
+    @Inject
+    private Txt txt;
+
+    private int parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Outcome of the batch for one character
+     *
+     * @param saved true if the character was changed by the edit and written
+     * @param bytes size of the written file, 0 if not saved
+     * @param error cause of the failure, null if the character was processed
+     */
+    public record Result(PlayerCharacterFile character, boolean saved, long bytes, Exception error) {
+        public boolean isFailed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * Outcome of the batch, with the results in the order of the characters requested
+     *
+     * @param nanos time taken by the whole batch, including the backup
+     */
+    public record Report(List<Result> results, Path backup, long nanos) {
+        public long getSaved() {
+            return results.stream().filter(Result::saved).count();
+        }
+
+        public long getFailed() {
+            return results.stream().filter(Result::isFailed).count();
+        }
+
+        public long getBytes() {
+            return results.stream().mapToLong(Result::bytes).sum();
+        }
+
+        public double getCharactersPerSecond() {
+            return nanos > 0 ? getSaved() * 1e9 / nanos : 0;
+        }
+
+        public double getBytesPerSecond() {
+            return nanos > 0 ? getBytes() * 1e9 / nanos : 0;
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Number of characters processed at the same time
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Character loaded by the batch, independent of the character loaded for editing
+     */
+    private static final class Job {
+        private final PlayerCharacterFile character;
+        private final Path playerChr;
+        private final CurrentPlayerData data = new CurrentPlayerData();
+        private Exception error;
+
+        private Job(PlayerCharacterFile character, Path playerChr) {
+            this.character = character;
+            this.playerChr = playerChr;
+        }
+
+        private boolean isChanged() {
+            return data.getSession().isLoaded() && data.getDataMap().isDirty();
+        }
+
+        private void release() {
+            data.getSession().release();
+        }
+    }
+
+    /**
+     * Load each character, apply the edit and save the characters changed by it. The character loaded for editing
+     * and characters with unsaved changes in the editor are not touched, checked again right before each write.
+     * Other characters kept loaded are unloaded when their file is written. Nothing is written if the backup can't be
+     * created.
+     *
+     * @param edit changes to apply to each character, called concurrently for different characters with a player
+     *             of its own
+     * @throws IOException if the backup archive can't be created
+     */
+    public Report save(List<PlayerCharacterFile> characters, Consumer<Player> edit) throws IOException {
+        if (State.get().isSaveInProgress()) {
+            throw new IllegalStateException("A save is already in progress");
+        }
+        long start = System.nanoTime();
+
+        // each file is handled by one job, a character requested twice is processed once
+        Map<Path, Job> jobs = new LinkedHashMap<>();
+        List<Job> requested = new ArrayList<>(characters.size());
+        for (PlayerCharacterFile character : characters) {
+            Path playerChr = gameInfo.playerChr(character.getPlayerName(), character.getLocation());
+            Job job = playerChr == null ? new Job(character, null) : jobs.computeIfAbsent(playerChr, p -> new Job(character, p));
+            if (playerChr == null) {
+                job.error = new IOException("Character file not found: " + character.getPlayerName());
+            }
+            requested.add(job);
+        }
+
+        State.get().setSaveInProgress(true);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, jobs.size())), r -> {
+            Thread t = new Thread(r, "batch-writer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Path backup = null;
+        Map<Job, Long> written = new LinkedHashMap<>();
+        try {
+            List<CompletableFuture<Void>> loads = new ArrayList<>(jobs.size());
+            for (Job job : jobs.values()) {
+                loads.add(CompletableFuture.runAsync(() -> load(job, edit), executor));
+            }
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).join();
+
+            List<Job> changed = jobs.values().stream().filter(Job::isChanged).toList();
+            if (!changed.isEmpty()) {
+                backup = backup(changed);
+            }
+
+            List<CompletableFuture<Long>> writes = new ArrayList<>(changed.size());
+            for (Job job : changed) {
+                writes.add(CompletableFuture.supplyAsync(() -> write(job), executor));
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                written.put(changed.get(i), writes.get(i).join());
+            }
+        } finally {
+            executor.shutdown();
+            jobs.values().forEach(Job::release);
+            State.get().setSaveInProgress(false);
+        }
+
+        List<Result> results = new ArrayList<>(requested.size());
+        for (Job job : requested) {
+            Long bytes = written.get(job);
+            results.add(new Result(job.character, job.error == null && bytes != null, bytes != null ? bytes : 0, job.error));
+        }
+        Report report = new Report(results, backup, System.nanoTime() - start);
+        logger.log(INFO, "Saved {0} of {1} characters in {2}ms, {3} characters/s, {4} KiB/s, {5} failed",
+                report.getSaved(), results.size(), report.nanos() / 1_000_000,
+                String.format("%.1f", report.getCharactersPerSecond()),
+                String.format("%.1f", report.getBytesPerSecond() / 1024), report.getFailed());
+        return report;
+    }
+
+    private void load(Job job, Consumer<Player> edit) {
+        try {
+            if (saveData.isCurrent(job.playerChr)) {
+                throw new IllegalStateException("Character is loaded for editing: " + job.character.getPlayerName());
+            }
+            if (saveData.hasPendingChanges(job.playerChr)) {
+                throw new IllegalStateException("Character has unsaved changes: " + job.character.getPlayerName());
+            }
+            job.data.setPlayerName(job.character.getPlayerName());
+            job.data.setLocation(job.character.getLocation());
+            Player player = new Player(job.data, gameInfo, db, txt);
+            player.parse(job.playerChr);
+            edit.accept(player);
+            if (!job.data.getDataMap().isDirty()) {
+                logger.log(DEBUG, "No changes to save for character ''{0}''", job.character.getPlayerName());
+            }
+        } catch (RuntimeException e) {
+            logger.log(ERROR, "Error loading character ''{0}''", job.playerChr);
+            job.error = e;
+            job.release();
+        }
+    }
+
+    private Long write(Job job) {
+        try {
+            // the character may have been opened in the editor since it was loaded by the batch
+            if (!saveData.claim(job.playerChr)) {
+                throw new IllegalStateException("Character is being edited: " + job.character.getPlayerName());
+            }
+            try {
+                DetachedWriter writer = new DetachedWriter(job.data, Settings.getVerifySave());
+                writer.write();
+                return Files.size(job.playerChr);
+            } finally {
+                // the character kept loaded by the editor no longer matches the written file
+                saveData.evict(job.playerChr);
+                saveData.unclaim(job.playerChr);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(ERROR, "Error saving character ''{0}''", job.playerChr);
+            job.error = e;
+            return null;
+        } finally {
+            job.release();
+        }
+    }
+
+    private Path backup(List<Job> changed) throws IOException {
+        Path backupDirectory = Path.of(gameInfo.getSavePath(), Constants.BACKUP_DIRECTORY);
+        Files.createDirectories(backupDirectory);
+        String ts = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS").format(new Date());
+        Path destZip = backupDirectory.resolve(String.format("batch_%s.zip", ts));
+        logger.log(INFO, "creating backup of {0} characters at {1}", changed.size(), destZip);
+
+        try (FileSystem zipFs = FileSystems.newFileSystem(URI.create("jar:" + destZip.toUri()), Map.of("create", "true"))) {
+            for (Job job : changed) {
+                Path dir = zipFs.getPath("/" + job.character.getLocation(), job.playerChr.getParent().getFileName().toString());
+                Files.createDirectories(dir);
+                Path dest = dir.resolve(Constants.PLAYERCHR);
+                Files.copy(job.playerChr, dest);
+                Files.setLastModifiedTime(dest, Files.getLastModifiedTime(job.playerChr));
+            }
+        }
+        return destZip;
+    }
+}
@@ -20,50 +20,57 @@
 
 package br.com.pinter.tqrespec.save.player;
 
+import br.com.pinter.tqrespec.logging.Log;
 import br.com.pinter.tqrespec.save.FileDataHolder;
 import br.com.pinter.tqrespec.save.FileDataMap;
 import br.com.pinter.tqrespec.save.Platform;
 import br.com.pinter.tqrespec.save.SaveLocation;
 import com.google.inject.Singleton;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
 
 @Singleton
 public class CurrentPlayerData implements FileDataHolder {
-    private final Map<String, PlayerSkill> playerSkills = Collections.synchronizedMap(new LinkedHashMap<>());
-    private final AtomicBoolean missingSkills = new AtomicBoolean(false);
-    private String playerName = null;
-    private Path playerChr = null;
-    private FileDataMap dataMap = new FileDataMap();
-    private HeaderInfo headerInfo = new HeaderInfo();
-    private ByteBuffer buffer = null;
-    private SaveLocation location;
+    private static final System.Logger logger = Log.getLogger(CurrentPlayerData.class);
+    private static final int DEFAULT_MAX_SESSIONS = 4;
+
+    private volatile EditSession session = new EditSession();
+    // characters kept loaded, in access order
+    private final LinkedHashMap<Path, EditSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    // files being written outside the editor, guarded by sessions
+    private final Set<Path> claimed = new HashSet<>();
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
 
     @Override
     public String getPlayerName() {
-        return playerName;
+        return session.getPlayerName();
     }
 
     @Override
     public void setPlayerName(String playerName) {
-        this.playerName = playerName;
+        session.setPlayerName(playerName);
     }
 
     public void setLocation(SaveLocation location) {
-        this.location = location;
+        session.setLocation(location);
     }
 
     public SaveLocation getLocation() {
-        return location;
+        return session.getLocation();
     }
 
     boolean isCustomQuest() {
-        return SaveLocation.USER.equals(location);
+        return SaveLocation.USER.equals(getLocation());
     }
 
     String getPlayerClassTag() {
@@ -78,28 +85,28 @@ public class CurrentPlayerData implements FileDataHolder {
     }
 
     Map<String, PlayerSkill> getPlayerSkills() {
-        return playerSkills;
+        return session.getPlayerSkills();
     }
 
     Path getPlayerChr() {
-        return playerChr;
+        return session.getPlayerChr();
     }
 
     public void setPlayerChr(Path playerChr) {
-        this.playerChr = playerChr;
+        session.setPlayerChr(playerChr);
     }
 
     HeaderInfo getHeaderInfo() {
-        return headerInfo;
+        return session.getHeaderInfo();
     }
 
     void setHeaderInfo(HeaderInfo headerInfo) {
-        this.headerInfo = headerInfo;
+        session.setHeaderInfo(headerInfo);
     }
 
     @Override
     public Path getPlayerPath() {
-        return playerChr.getParent();
+        return getPlayerChr().getParent();
     }
 
     @Override
@@ -109,25 +116,25 @@ public class CurrentPlayerData implements FileDataHolder {
 
     @Override
     public ByteBuffer getBuffer() {
-        return buffer;
+        return session.getBuffer();
     }
 
     @Override
     public void setBuffer(ByteBuffer buffer) {
-        this.buffer = buffer;
+        session.setBuffer(buffer);
     }
 
     @Override
     public FileDataMap getDataMap() {
-        return dataMap;
+        return session.getDataMap();
     }
 
     public boolean isMissingSkills() {
-        return missingSkills.get();
+        return session.getMissingSkills().get();
     }
 
     public void setMissingSkills(boolean newValue) {
-        missingSkills.set(newValue);
+        session.getMissingSkills().set(newValue);
     }
 
     public Platform getPlatform() {
@@ -138,16 +145,202 @@ public class CurrentPlayerData implements FileDataHolder {
         getDataMap().setPlatform(platform);
     }
 
-    void reset() {
-        dataMap.clear();
-        buffer = null;
-        headerInfo = new HeaderInfo();
-        dataMap = new FileDataMap();
-        playerName = null;
-        location = SaveLocation.MAIN;
-        playerSkills.clear();
-        missingSkills.set(false);
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Number of characters kept loaded after switching to another one
+     */
+    public void setMaxSessions(int maxSessions) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("at least one session must be kept");
+        }
+        synchronized (sessions) {
+            this.maxSessions = maxSessions;
+            evictEldest();
+        }
+    }
+
+    int getSessionCount() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    /**
+     * Keep the current character loaded, so it can be activated again without parsing the file
+     */
+    void retain() {
+        EditSession current = session;
+        if (!current.isLoaded()) {
+            return;
+        }
+        try {
+            current.stamp();
+        } catch (IOException e) {
+            logger.log(WARNING, "Unable to read attributes of ''{0}'', character not kept loaded", current.getPlayerChr());
+            return;
+        }
+        synchronized (sessions) {
+            sessions.put(current.getPlayerChr(), current);
+            evictEldest();
+        }
+    }
+
+    /**
+     * Switch to the character loaded from the file, if it's still loaded and the file didn't change since
+     *
+     * @return true if the character was activated, false if it must be loaded again
+     */
+    boolean activate(Path playerChr) {
+        EditSession found;
+        synchronized (sessions) {
+            awaitUnclaimed(playerChr);
+            found = sessions.get(playerChr);
+            if (found != null && found.isStale()) {
+                sessions.remove(playerChr);
+                if (found.getDataMap().isDirty()) {
+                    logger.log(WARNING, "Character ''{0}'' changed on disk, discarding changes not saved", playerChr);
+                } else {
+                    logger.log(DEBUG, "Character ''{0}'' changed on disk, discarding loaded data", playerChr);
+                }
+                found.release();
+                found = null;
+            }
+        }
+        if (found == null) {
+            return false;
+        }
+        session = found;
+        return true;
+    }
+
+    /**
+     * Whether the character loaded from the file has changes not saved yet
+     */
+    boolean hasPendingChanges(Path playerChr) {
+        EditSession current = session;
+        if (playerChr.equals(current.getPlayerChr()) && current.getDataMap().isDirty()) {
+            return true;
+        }
+        synchronized (sessions) {
+            // iterated, a lookup would change the access order of the sessions
+            for (EditSession s : sessions.values()) {
+                if (playerChr.equals(s.getPlayerChr()) && s.getDataMap().isDirty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the file is the character loaded for editing
+     */
+    boolean isCurrent(Path playerChr) {
+        EditSession current = session;
+        return current.isLoaded() && playerChr.equals(current.getPlayerChr());
+    }
+
+    /**
+     * Unload the character kept loaded from the file, after the file was written outside the editor. The
+     * character loaded for editing is left untouched.
+     */
+    void evict(Path playerChr) {
+        EditSession found;
+        synchronized (sessions) {
+            found = sessions.get(playerChr);
+            if (found == null || found == session) {
+                return;
+            }
+            sessions.remove(playerChr);
+        }
+        logger.log(DEBUG, "Character ''{0}'' written outside the editor, discarding loaded data", playerChr);
+        found.release();
+    }
+
+    /**
+     * Reserve the file to be written outside the editor. Refused if the character is the one being loaded for
+     * editing or has pending changes. Switching to the character waits until the file is released by
+     * {@link #unclaim(Path)}.
+     *
+     * @return false if the character is being edited or the file is already reserved
+     */
+    boolean claim(Path playerChr) {
+        synchronized (sessions) {
+            if (playerChr.equals(session.getPlayerChr()) || hasPendingChanges(playerChr)) {
+                return false;
+            }
+            return claimed.add(playerChr);
+        }
+    }
+
+    void unclaim(Path playerChr) {
+        synchronized (sessions) {
+            claimed.remove(playerChr);
+            sessions.notifyAll();
+        }
+    }
+
+    private void awaitUnclaimed(Path playerChr) {
+        boolean interrupted = false;
+        while (claimed.contains(playerChr)) {
+            try {
+                sessions.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    EditSession getSession() {
+        return session;
+    }
+
+    /**
+     * Start a new empty session. The current character is left loaded, with its pending changes, to be found
+     * again when switching back to it.
+     */
+    void detach() {
+        EditSession current = session;
+        if (current.isLoaded() && current.getDataMap().isDirty()) {
+            logger.log(DEBUG, "Keeping changes not saved of ''{0}''", current.getPlayerChr());
+        }
+        session = new EditSession();
     }
 
+    /**
+     * Unload the least recently used characters above the limit. Characters with pending changes and the
+     * current one are never unloaded, the limit is exceeded while they are loaded.
+     */
+    private void evictEldest() {
+        Iterator<EditSession> eldest = sessions.values().iterator();
+        int excess = sessions.size() - maxSessions;
+        while (excess > 0 && eldest.hasNext()) {
+            EditSession s = eldest.next();
+            if (s != session && !s.getDataMap().isDirty()) {
+                eldest.remove();
+                s.release();
+                excess--;
+            }
+        }
+    }
 
+    /**
+     * Unload the current character. The data of the character is discarded, it will be parsed again on the
+     * next load.
+     */
+    void reset() {
+        EditSession current = session;
+        if (current.getPlayerChr() != null) {
+            synchronized (sessions) {
+                sessions.remove(current.getPlayerChr(), current);
+            }
+        }
+        current.clear();
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.core.State;
+import br.com.pinter.tqrespec.logging.Log;
+import br.com.pinter.tqrespec.save.BufferPool;
+import br.com.pinter.tqrespec.save.ChangeJournal;
+import br.com.pinter.tqrespec.save.FileDataHolder;
+import br.com.pinter.tqrespec.save.FileDataMap;
+import br.com.pinter.tqrespec.save.FileWriter;
+import br.com.pinter.tqrespec.util.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.ERROR;
+
+/**
+ * Writes the Player.chr of a character that isn't the one loaded in {@link CurrentPlayerData}
+ */
+final class DetachedWriter extends FileWriter {
+    private static final System.Logger logger = Log.getLogger(DetachedWriter.class);
+
+    private final FileDataHolder saveData;
+    private final boolean verify;
+
+    DetachedWriter(FileDataHolder saveData, boolean verify) {
+        this.saveData = saveData;
+        this.verify = verify;
+    }
+
+    @Override
+    public boolean save() {
+        try {
+            write();
+            return true;
+        } catch (IOException e) {
+            logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
+            return false;
+        }
+    }
+
+    void write() throws IOException {
+        write(saveData.getDataMap());
+    }
+
+    /**
+     * Write the character with the changes of the map. The save is marked in progress while writing, unless
+     * the caller already marked it for a batch of writes.
+     */
+    void write(FileDataMap fileDataMap) throws IOException {
+        boolean marked = !State.get().isSaveInProgress();
+        if (marked) {
+            State.get().setSaveInProgress(true);
+        }
+        try {
+            writeBuffer(saveData.getPlayerPath().toString(), Constants.PLAYERCHR, fileDataMap);
+        } finally {
+            if (marked) {
+                State.get().setSaveInProgress(false);
+            }
+        }
+    }
+
+    /**
+     * Write the changes staged on a session to its file. Once the session was written, the file is written again
+     * from the content written with only the changes that differ from it, so it can still be patched in place
+     * and journaled.
+     *
+     * @param staged changes staged on the session
+     * @param stale  whether the file was modified since the session was loaded or written
+     * @return content and changes of the file after the write, the written ones of the snapshot if the file
+     * already has the changes staged
+     */
+    static EditSession.Written write(EditSession.Snapshot snapshot, Map<Integer, ChangeJournal.Pending> staged,
+                                     boolean stale, boolean verify) throws IOException {
+        EditSession.Written previous = snapshot.written();
+        ByteBuffer source = snapshot.buffer();
+        FileDataMap changes = null;
+        if (previous != null) {
+            changes = FileDataMap.rebase(snapshot.buffer(), previous.changes(), staged);
+            if (changes == null) {
+                logger.log(DEBUG, "Changes of ''{0}'' overlap the ones written, rendering from loaded content",
+                        snapshot.playerChr());
+            } else if (!changes.isDirty() && !stale) {
+                return previous;
+            } else {
+                source = previous.content();
+            }
+        }
+        if (changes == null) {
+            changes = snapshot.dataMap().withChanges(staged);
+        }
+        // the journal is bound to the content written last, or to the loaded one
+        boolean bound = previous == null || source == previous.content();
+        changes.setJournal(bound ? snapshot.journal() : null);
+
+        Source saveData = new Source(source, snapshot.playerChr(), snapshot.playerName(), changes);
+        new DetachedWriter(saveData, verify).write();
+        try (FileChannel channel = FileChannel.open(snapshot.playerChr(), StandardOpenOption.READ)) {
+            return new EditSession.Written(BufferPool.read(channel, (int) channel.size()), Map.copyOf(staged));
+        }
+    }
+
+    /**
+     * Content and changes of a single write, detached from the session
+     */
+    private record Source(ByteBuffer buffer, Path playerChr, String playerName, FileDataMap dataMap)
+            implements FileDataHolder {
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public void setBuffer(ByteBuffer buffer) {
+            //not implemented
+        }
+
+        @Override
+        public FileDataMap getDataMap() {
+            return dataMap;
+        }
+
+        @Override
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        @Override
+        public void setPlayerName(String playerName) {
+            //not implemented
+        }
+
+        @Override
+        public Path getPlayerPath() {
+            return playerChr.getParent();
+        }
+
+        @Override
+        public void setPlayerPath(Path playerPath) {
+            //not implemented
+        }
+    }
+
+    @Override
+    public int getCrcOffset() {
+        return 0;
+    }
+
+    @Override
+    public boolean isCreateCrc() {
+        return false;
+    }
+
+    @Override
+    public boolean isVerify() {
+        return verify;
+    }
+
+    @Override
+    protected FileDataHolder getSaveData() {
+        return saveData;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.save.BufferPool;
+import br.com.pinter.tqrespec.save.ChangeJournal;
+import br.com.pinter.tqrespec.save.FileDataHolder;
+import br.com.pinter.tqrespec.save.FileDataMap;
+import br.com.pinter.tqrespec.save.SaveLocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * State of one loaded character: the parsed file, its data map and skills. Sessions are kept resident by
+ * {@link CurrentPlayerData} so a character can be activated again without parsing the file.
+ */
+final class EditSession implements FileDataHolder {
+    private final Map<String, PlayerSkill> playerSkills = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicBoolean missingSkills = new AtomicBoolean(false);
+    private String playerName = null;
+    private Path playerChr = null;
+    private FileDataMap dataMap = new FileDataMap();
+    private HeaderInfo headerInfo = new HeaderInfo();
+    private ByteBuffer buffer = null;
+    private SaveLocation location = SaveLocation.MAIN;
+    private FileTime lastModified;
+    private long size = -1;
+    // content the file has after being written while the session is loaded, null if never written
+    private Written written;
+    // writes in progress, the buffers released meanwhile are returned to the pool when the last one ends
+    private int writers;
+    private long generation;
+    private final List<ByteBuffer> retired = new ArrayList<>();
+
+    /**
+     * Content of the file after a write and the changes it was written with, by offset of the loaded content
+     */
+    record Written(ByteBuffer content, Map<Integer, ChangeJournal.Pending> changes) {
+    }
+
+    /**
+     * State of the session read by a write, taken by {@link #beginWrite()}
+     */
+    record Snapshot(long generation, Path playerChr, String playerName, ByteBuffer buffer, FileDataMap dataMap,
+                    ChangeJournal journal, Written written) {
+    }
+
+    Map<String, PlayerSkill> getPlayerSkills() {
+        return playerSkills;
+    }
+
+    AtomicBoolean getMissingSkills() {
+        return missingSkills;
+    }
+
+    @Override
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    @Override
+    public void setPlayerName(String playerName) {
+        this.playerName = playerName;
+    }
+
+    Path getPlayerChr() {
+        return playerChr;
+    }
+
+    void setPlayerChr(Path playerChr) {
+        this.playerChr = playerChr;
+    }
+
+    @Override
+    public FileDataMap getDataMap() {
+        return dataMap;
+    }
+
+    HeaderInfo getHeaderInfo() {
+        return headerInfo;
+    }
+
+    void setHeaderInfo(HeaderInfo headerInfo) {
+        this.headerInfo = headerInfo;
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Path getPlayerPath() {
+        return playerChr.getParent();
+    }
+
+    @Override
+    public void setPlayerPath(Path playerPath) {
+        //not implemented
+    }
+
+    SaveLocation getLocation() {
+        return location;
+    }
+
+    void setLocation(SaveLocation location) {
+        this.location = location;
+    }
+
+    boolean isLoaded() {
+        return buffer != null && playerChr != null;
+    }
+
+    /**
+     * Record the state of the file the session was loaded from
+     */
+    void stamp() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(playerChr, BasicFileAttributes.class);
+        lastModified = attributes.lastModifiedTime();
+        size = attributes.size();
+    }
+
+    /**
+     * Whether the file was modified after the session was loaded, by the game or another tool
+     */
+    boolean isStale() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(playerChr, BasicFileAttributes.class);
+            return !attributes.lastModifiedTime().equals(lastModified) || attributes.size() != size;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Start a write of the file outside of the session lock. The buffers read by the write stay valid until
+     * {@link #endWrite()}, even if the session is released or cleared meanwhile.
+     *
+     * @return null if the session isn't loaded
+     */
+    synchronized Snapshot beginWrite() {
+        if (!isLoaded()) {
+            return null;
+        }
+        writers++;
+        return new Snapshot(generation, playerChr, playerName, buffer, dataMap, dataMap.getJournal(), written);
+    }
+
+    synchronized void endWrite() {
+        writers--;
+        if (writers == 0) {
+            retired.forEach(BufferPool::release);
+            retired.clear();
+        }
+    }
+
+    /**
+     * Keep the content written by the write started with the snapshot, and record the changes staged since in a
+     * new journal bound to it. Ignored if the session was released or cleared during the write.
+     *
+     * @param result content written, the one of the snapshot if nothing was written
+     * @param staged changes staged now
+     */
+    synchronized void commitWrite(Snapshot snapshot, Written result, Map<Integer, ChangeJournal.Pending> staged)
+            throws IOException {
+        if (snapshot.generation() != generation) {
+            if (result != snapshot.written()) {
+                retire(result.content());
+            }
+            return;
+        }
+        if (result == written) {
+            // nothing written, the journal is still bound to the file
+            return;
+        }
+        if (written != null) {
+            retire(written.content());
+        }
+        written = result;
+        reopenJournal(staged);
+        // the file has the changes now, the session isn't stale
+        stamp();
+    }
+
+    /**
+     * Record the changes staged in a new journal, after a write failed. The journal may have been discarded by the
+     * write. Ignored if the session was released or cleared during the write.
+     */
+    synchronized void abortWrite(Snapshot snapshot, Map<Integer, ChangeJournal.Pending> staged) {
+        if (snapshot.generation() == generation) {
+            reopenJournal(staged);
+        }
+    }
+
+    private void reopenJournal(Map<Integer, ChangeJournal.Pending> staged) {
+        ChangeJournal previous = dataMap.getJournal();
+        if (previous == null) {
+            return;
+        }
+        previous.discard();
+        Map<Integer, ChangeJournal.Pending> base = written != null ? written.changes() : Map.of();
+        ChangeJournal journal = written != null
+                ? ChangeJournal.open(previous.getPath(), buffer, written.content(), base)
+                : ChangeJournal.open(previous.getPath(), buffer);
+        staged.forEach((offset, change) -> {
+            ChangeJournal.Pending same = base.get(offset);
+            if (same == null || same.previousLength() != change.previousLength()
+                    || !Arrays.equals(same.data(), change.data())) {
+                journal.put(offset, change.previousLength(), change.data());
+            }
+        });
+        base.keySet().stream().filter(offset -> !staged.containsKey(offset)).forEach(journal::drop);
+        dataMap.setJournal(journal);
+    }
+
+    synchronized Written getWritten() {
+        return written;
+    }
+
+    private void retire(ByteBuffer retiredBuffer) {
+        if (writers > 0) {
+            retired.add(retiredBuffer);
+        } else {
+            BufferPool.release(retiredBuffer);
+        }
+    }
+
+    private void retireAll() {
+        retire(buffer);
+        buffer = null;
+        if (written != null) {
+            retire(written.content());
+            written = null;
+        }
+        generation++;
+    }
+
+    /**
+     * Return the buffer of a session no longer kept loaded to the pool, the session can't be activated again.
+     * Changes not saved are abandoned, with their journal. A write of the session in progress isn't waited for,
+     * its buffers are returned when it ends and its result is ignored.
+     */
+    synchronized void release() {
+        ChangeJournal journal = dataMap.getJournal();
+        if (journal != null) {
+            journal.discard();
+        }
+        retireAll();
+    }
+
+    synchronized void clear() {
+        dataMap.clear();
+        retireAll();
+        headerInfo = new HeaderInfo();
+        dataMap = new FileDataMap();
+        playerName = null;
+        playerChr = null;
+        location = SaveLocation.MAIN;
+        playerSkills.clear();
+        missingSkills.set(false);
+        lastModified = null;
+        size = -1;
+    }
+}
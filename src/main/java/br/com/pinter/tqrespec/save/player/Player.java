@@ -28,9 +28,11 @@ import br.com.pinter.tqrespec.core.State;
 import br.com.pinter.tqrespec.core.UnhandledRuntimeException;
 import br.com.pinter.tqrespec.logging.Log;
 import br.com.pinter.tqrespec.save.BlockInfo;
+import br.com.pinter.tqrespec.save.ChangeJournal;
 import br.com.pinter.tqrespec.save.FileDataMap;
 import br.com.pinter.tqrespec.save.SaveLocation;
 import br.com.pinter.tqrespec.save.UID;
+import br.com.pinter.tqrespec.save.VariableHandle;
 import br.com.pinter.tqrespec.save.VariableInfo;
 import br.com.pinter.tqrespec.save.VariableType;
 import br.com.pinter.tqrespec.tqdata.Db;
@@ -41,18 +43,23 @@ import br.com.pinter.tqrespec.tqdata.Mastery;
 import br.com.pinter.tqrespec.tqdata.PlayerCharacter;
 import br.com.pinter.tqrespec.tqdata.Txt;
 import br.com.pinter.tqrespec.util.Constants;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -76,6 +83,27 @@ public class Player {
     @Inject
     private CurrentPlayerData saveData;
 
+    private final Map<String, VariableHandle> handles = new ConcurrentHashMap<>();
+
+    private final Map<String, VariableHandle> tempAttrHandles = new ConcurrentHashMap<>();
+
+    private volatile TeleportSegments teleportSegments;
+
+    private volatile Map<Integer, ChangeJournal.Pending> unsavedChanges = Map.of();
+
+    public Player() {
+    }
+
+    /**
+     * Player of a character not loaded for editing, holding its own data
+     */
+    Player(CurrentPlayerData saveData, GameInfo gameInfo, Db db, Txt txt) {
+        this.saveData = saveData;
+        this.gameInfo = gameInfo;
+        this.db = db;
+        this.txt = txt;
+    }
+
     public CurrentPlayerData getSaveData() {
         return saveData;
     }
@@ -85,7 +113,9 @@ public class Player {
     }
 
     protected void prepareSaveData() {
-        reset();
+        State.get().setSaveInProgress(null);
+        unsavedChanges = Map.of();
+        getSaveData().detach();
     }
 
     public boolean loadPlayer(String playerName, SaveLocation saveLocation) {
@@ -102,21 +132,25 @@ public class Player {
             getSaveData().setLocation(saveLocation);
             playerChrPath = gameInfo.playerChr(playerName, saveLocation);
 
-            logger.log(INFO, "Loading character ''{0}''", playerChrPath);
+            if (getSaveData().activate(playerChrPath)) {
+                logger.log(INFO, "Switching to loaded character ''{0}''", playerChrPath);
+                return true;
+            }
 
+            logger.log(INFO, "Loading character ''{0}''", playerChrPath);
 
-            getSaveData().setPlayerChr(playerChrPath);
-            PlayerParser playerParser = new PlayerParser(
-                    new File(getSaveData().getPlayerChr().toString()),
-                    playerName);
+            Path journalPath = journalPath(playerName, saveLocation);
+            try {
+                ChangeJournal.recover(journalPath, playerChrPath);
+            } catch (IOException e) {
+                logger.log(WARNING, "Unable to recover journal ''{0}''", journalPath);
+            }
 
-            getSaveData().setBuffer(playerParser.load());
-            getSaveData().setPlatform(playerParser.getDetectedPlatform());
-            getDataMap().setBlockInfo(playerParser.getBlockInfo());
-            getSaveData().setHeaderInfo(playerParser.getHeaderInfo());
-            getDataMap().setVariableLocation(playerParser.getVariableLocation());
-            saveData.getDataMap().validate();
-            prepareSkillsList();
+            parse(playerChrPath);
+            ChangeJournal journal = ChangeJournal.open(journalPath, getSaveData().getBuffer());
+            unsavedChanges = journal.previous();
+            getDataMap().setJournal(journal);
+            getSaveData().retain();
         } catch (RuntimeException e) {
             reset();
             logger.log(ERROR, "Error loading character", e);
@@ -125,6 +159,69 @@ public class Player {
         return true;
     }
 
+    /**
+     * Parse the character file into the current session, the name and location must be set before
+     */
+    void parse(Path playerChrPath) {
+        getSaveData().setPlayerChr(playerChrPath);
+        PlayerParser playerParser = new PlayerParser(
+                new File(getSaveData().getPlayerChr().toString()),
+                getSaveData().getPlayerName());
+
+        getSaveData().setBuffer(playerParser.load());
+        getSaveData().setPlatform(playerParser.getDetectedPlatform());
+        getDataMap().setBlockInfo(playerParser.getBlockInfo());
+        getSaveData().setHeaderInfo(playerParser.getHeaderInfo());
+        getDataMap().setVariableLocation(playerParser.getVariableLocation());
+        getDataMap().setVariableAlias(playerParser.getVariableAlias());
+        saveData.getDataMap().validate();
+        prepareSkillsList();
+    }
+
+    /**
+     * Whether the character loaded has changes staged and never saved in a previous run, left in its journal
+     */
+    public boolean hasUnsavedChanges() {
+        return !unsavedChanges.isEmpty();
+    }
+
+    /**
+     * Stage again the changes never saved in a previous run
+     *
+     * @return false if the changes couldn't be restored, they are discarded
+     */
+    public boolean restoreUnsavedChanges() {
+        Map<Integer, ChangeJournal.Pending> changes = unsavedChanges;
+        unsavedChanges = Map.of();
+        if (changes.isEmpty()) {
+            return true;
+        }
+        if (!getDataMap().restore(changes)) {
+            logger.log(WARNING, "Unable to restore changes not saved of ''{0}''", getSaveData().getPlayerChr());
+            getDataMap().getJournal().dropPrevious();
+            return false;
+        }
+        logger.log(INFO, "Restored {0} changes not saved of ''{1}''", changes.size(), getSaveData().getPlayerChr());
+        prepareSkillsList();
+        return true;
+    }
+
+    /**
+     * Discard the changes never saved in a previous run, deleting the journal holding them
+     */
+    public void discardUnsavedChanges() {
+        unsavedChanges = Map.of();
+        ChangeJournal journal = getDataMap().getJournal();
+        if (journal != null) {
+            journal.dropPrevious();
+        }
+    }
+
+    private Path journalPath(String playerName, SaveLocation saveLocation) {
+        return Path.of(gameInfo.getSavePath(), Constants.JOURNAL_DIRECTORY,
+                String.format("%s_%s.journal", saveLocation, playerName));
+    }
+
     public PlayerCharacter getCharacter() {
         PlayerCharacter playerCharacter = new PlayerCharacter();
         playerCharacter.setPath(getSaveData().getPlayerPath());
@@ -386,43 +483,43 @@ public class Player {
     }
 
     public int getStr() {
-        return getDataMap().getTempAttr("str");
+        return getDataMap().readInt(tempAttrHandle("str"));
     }
 
     public void setStr(int val) {
-        getDataMap().setTempAttr("str", val);
+        getDataMap().writeInt(tempAttrHandle("str"), val);
     }
 
     public int getInt() {
-        return getDataMap().getTempAttr("int");
+        return getDataMap().readInt(tempAttrHandle("int"));
     }
 
     public void setInt(int val) {
-        getDataMap().setTempAttr("int", val);
+        getDataMap().writeInt(tempAttrHandle("int"), val);
     }
 
     public int getDex() {
-        return getDataMap().getTempAttr("dex");
+        return getDataMap().readInt(tempAttrHandle("dex"));
     }
 
     public void setDex(int val) {
-        getDataMap().setTempAttr("dex", val);
+        getDataMap().writeInt(tempAttrHandle("dex"), val);
     }
 
     public int getLife() {
-        return getDataMap().getTempAttr("life");
+        return getDataMap().readInt(tempAttrHandle("life"));
     }
 
     public void setLife(int val) {
-        getDataMap().setTempAttr("life", val);
+        getDataMap().writeInt(tempAttrHandle("life"), val);
     }
 
     public int getMana() {
-        return getDataMap().getTempAttr("mana");
+        return getDataMap().readInt(tempAttrHandle("mana"));
     }
 
     public void setMana(int val) {
-        getDataMap().setTempAttr("mana", val);
+        getDataMap().writeInt(tempAttrHandle("mana"), val);
     }
 
     public int getModifierPoints() {
@@ -430,20 +527,20 @@ public class Player {
     }
 
     public void setModifierPoints(int val) {
-        getDataMap().setInt("modifierPoints", val);
+        getDataMap().writeInt(handle("modifierPoints"), val);
     }
 
     public void setXp(int val) {
-        getDataMap().setInt("currentStats.experiencePoints", val);
+        getDataMap().writeInt(handle("currentStats.experiencePoints"), val);
     }
 
     public void setCharLevel(int val) {
-        getDataMap().setInt("currentStats.charLevel", val);
-        getDataMap().setInt("currentStats.experiencePoints", getXpLevelMin(val));
+        getDataMap().writeInt(handle("currentStats.charLevel"), val);
+        getDataMap().writeInt(handle("currentStats.experiencePoints"), getXpLevelMin(val));
     }
 
     public void setMoney(int gold) {
-        getDataMap().setInt("money", gold);
+        getDataMap().writeInt(handle("money"), gold);
     }
 
     public int getXp() {
@@ -483,7 +580,7 @@ public class Player {
             return;
         }
 
-        getDataMap().setInt("altMoney", altMoney);
+        getDataMap().writeInt(handle("altMoney"), altMoney);
     }
 
     public int getBoostedCharacterForX4() {
@@ -529,10 +626,7 @@ public class Player {
     }
 
     public int getInventorySacksCount() {
-        BlockInfo inv = getPlayerInventoryBlock();
-        List<BlockInfo> playerSacks = getDataMap().getBlockInfo().values()
-                .stream().filter(p -> p.getParentOffset() == inv.getStart()).toList();
-        return playerSacks.size();
+        return getPlayerInventoryBlock().getChildren().size();
     }
 
     public void addEmptyPlayerSacks() {
@@ -561,7 +655,7 @@ public class Player {
     }
 
     public void setStatPlayTimeInSeconds(int secs) {
-        getDataMap().setInt("playTimeInSeconds", secs);
+        getDataMap().writeInt(handle("playTimeInSeconds"), secs);
     }
 
     public String getStatGreatestMonsterKilledName() {
@@ -630,7 +724,7 @@ public class Player {
     }
 
     public void setStatNumberOfDeaths(int deaths) {
-        getDataMap().setInt("numberOfDeaths", deaths);
+        getDataMap().writeInt(handle("numberOfDeaths"), deaths);
     }
 
     public int getStatNumberOfKills() {
@@ -638,7 +732,7 @@ public class Player {
     }
 
     public void setStatNumberOfKills(int kills) {
-        getDataMap().setInt("numberOfKills", kills);
+        getDataMap().writeInt(handle("numberOfKills"), kills);
     }
 
     public int getStatExperienceFromKills() {
@@ -646,7 +740,7 @@ public class Player {
     }
 
     public void setStatExperienceFromKills(int xp) {
-        getDataMap().setInt("experienceFromKills", xp);
+        getDataMap().writeInt(handle("experienceFromKills"), xp);
     }
 
     public int getStatHealthPotionsUsed() {
@@ -654,7 +748,7 @@ public class Player {
     }
 
     public void setStatHealthPotionsUsed(int health) {
-        getDataMap().setInt("healthPotionsUsed", health);
+        getDataMap().writeInt(handle("healthPotionsUsed"), health);
     }
 
     public int getStatManaPotionsUsed() {
@@ -662,7 +756,7 @@ public class Player {
     }
 
     public void setStatManaPotionsUsed(int mana) {
-        getDataMap().setInt("manaPotionsUsed", mana);
+        getDataMap().writeInt(handle("manaPotionsUsed"), mana);
     }
 
     public int getStatMaxLevel() {
@@ -670,7 +764,7 @@ public class Player {
     }
 
     public void setStatMaxLevel(int level) {
-        getDataMap().setInt("maxLevel", level);
+        getDataMap().writeInt(handle("maxLevel"), level);
     }
 
     public int getStatNumHitsReceived() {
@@ -678,7 +772,7 @@ public class Player {
     }
 
     public void setStatNumHitsReceived(int hits) {
-        getDataMap().setInt("numHitsReceived", hits);
+        getDataMap().writeInt(handle("numHitsReceived"), hits);
     }
 
     public int getStatNumHitsInflicted() {
@@ -686,15 +780,15 @@ public class Player {
     }
 
     public void setStatNumHitsInflicted(int hits) {
-        getDataMap().setInt("numHitsInflicted", hits);
+        getDataMap().writeInt(handle("numHitsInflicted"), hits);
     }
 
     public int getStatGreatestDamageInflicted() {
-        return Math.round(getDataMap().getFloat("greatestDamageInflicted"));
+        return getDataMap().readInt(handle("greatestDamageInflicted"));
     }
 
     public void setStatGreatestDamageInflicted(float dmg) {
-        getDataMap().setFloat("greatestDamageInflicted", dmg);
+        getDataMap().writeFloat(handle("greatestDamageInflicted"), dmg);
     }
 
     public int getStatCriticalHitsInflicted() {
@@ -702,7 +796,7 @@ public class Player {
     }
 
     public void setStatCriticalHitsInflicted(int hits) {
-        getDataMap().setInt("criticalHitsInflicted", hits);
+        getDataMap().writeInt(handle("criticalHitsInflicted"), hits);
     }
 
     public int getStatCriticalHitsReceived() {
@@ -710,25 +804,27 @@ public class Player {
     }
 
     public void setStatCriticalHitsReceived(int hits) {
-        getDataMap().setInt("criticalHitsReceived", hits);
+        getDataMap().writeInt(handle("criticalHitsReceived"), hits);
     }
 
     public void resetPlayerStats() {
-        resetStatGreatestMonsterKilledName();
-        resetStatGreatestMonsterKilledLevel();
-        resetStatGreatestMonsterKilledLifeAndMana();
-        setStatPlayTimeInSeconds(0);
-        setStatNumberOfDeaths(0);
-        setStatNumberOfKills(0);
-        setStatExperienceFromKills(0);
-        setStatHealthPotionsUsed(0);
-        setStatManaPotionsUsed(0);
-        setStatMaxLevel(1);
-        setStatNumHitsReceived(0);
-        setStatNumHitsInflicted(0);
-        setStatGreatestDamageInflicted(0);
-        setStatCriticalHitsInflicted(0);
-        setStatCriticalHitsReceived(0);
+        getDataMap().edit(tx -> {
+            resetStatGreatestMonsterKilledName();
+            resetStatGreatestMonsterKilledLevel();
+            resetStatGreatestMonsterKilledLifeAndMana();
+            setStatPlayTimeInSeconds(0);
+            setStatNumberOfDeaths(0);
+            setStatNumberOfKills(0);
+            setStatExperienceFromKills(0);
+            setStatHealthPotionsUsed(0);
+            setStatManaPotionsUsed(0);
+            setStatMaxLevel(1);
+            setStatNumHitsReceived(0);
+            setStatNumHitsInflicted(0);
+            setStatGreatestDamageInflicted(0);
+            setStatCriticalHitsInflicted(0);
+            setStatCriticalHitsReceived(0);
+        });
     }
 
     private int getVariableValueIntegerValidate(String variable, int defaultVal) {
@@ -752,7 +848,34 @@ public class Player {
     }
 
     private int getVariableValueInteger(String variable) {
-        return getDataMap().getInt(variable);
+        VariableHandle handle = handles.get(variable);
+        if (!getDataMap().isValid(handle)) {
+            handle = getDataMap().findHandle(variable);
+            if (handle == null) {
+                // defined more than once (skillPoints, max), the first definition is used
+                return getDataMap().getInt(variable);
+            }
+            handles.put(variable, handle);
+        }
+        return getDataMap().readInt(handle);
+    }
+
+    private VariableHandle handle(String variable) {
+        VariableHandle handle = handles.get(variable);
+        if (!getDataMap().isValid(handle)) {
+            handle = getDataMap().handle(variable);
+            handles.put(variable, handle);
+        }
+        return handle;
+    }
+
+    private VariableHandle tempAttrHandle(String attr) {
+        VariableHandle handle = tempAttrHandles.get(attr);
+        if (!getDataMap().isValid(handle)) {
+            handle = getDataMap().tempAttrHandle(attr);
+            tempAttrHandles.put(attr, handle);
+        }
+        return handle;
     }
 
     private int getVariableValueInteger(int blockStart, String variable) {
@@ -866,18 +989,12 @@ public class Player {
     }
 
     public VariableInfo getTeleportUIDsSizeVar(int difficulty) {
-        Optional<BlockInfo> first = getDataMap().getBlockInfo().values().stream().filter(
-                f -> f.getBlockType() == PlayerBlockType.PLAYER_MAIN).findFirst();
-
-        BlockInfo block;
-
-        if (first.isPresent()) {
-            block = first.get();
-        } else {
+        BlockInfo block = getDataMap().getFirstBlock(PlayerBlockType.PLAYER_MAIN);
+        if (block == null) {
             return null;
         }
-        List<VariableInfo> teleportUidsSizeVars = new ArrayList<>(block.getVariables().get(Constants.Save.VAR_TELEPORTUIDSSIZE));
-        VariableInfo var = teleportUidsSizeVars.stream().sorted(Comparator.comparing(VariableInfo::getKeyOffset)).toList().get(difficulty);
+
+        VariableInfo var = getDataMap().getSortedVariables(block).get(Constants.Save.VAR_TELEPORTUIDSSIZE).get(difficulty);
         if (var.isInt() && var.getName().equals(Constants.Save.VAR_TELEPORTUIDSSIZE)) {
             return var;
         }
@@ -885,13 +1002,15 @@ public class Player {
     }
 
     public void setTeleportUIDsSize() {
-        for (int difficulty = 0; difficulty <= getDifficulty(); difficulty++) {
-            TeleportDifficulty teleportDifficulty = getTeleportUidFromDifficulty(difficulty);
-            if (teleportDifficulty != null) {
-                logger.log(DEBUG, "setting teleportUIDsSize({0}) to {1}", difficulty, teleportDifficulty.getTeleports().size());
-                getDataMap().setInt(getTeleportUIDsSizeVar(difficulty), teleportDifficulty.getTeleports().size());
+        getDataMap().edit(tx -> {
+            for (int difficulty = 0; difficulty <= getDifficulty(); difficulty++) {
+                TeleportDifficulty teleportDifficulty = getTeleportUidFromDifficulty(difficulty);
+                if (teleportDifficulty != null) {
+                    logger.log(DEBUG, "setting teleportUIDsSize({0}) to {1}", difficulty, teleportDifficulty.getTeleports().size());
+                    tx.setInt(getTeleportUIDsSizeVar(difficulty), teleportDifficulty.getTeleports().size());
+                }
             }
-        }
+        });
     }
 
     public int getTeleportUIDsSize(int difficulty) {
@@ -903,153 +1022,170 @@ public class Player {
     }
 
     public void removeTeleport(int difficulty, UID uid) {
-        TeleportDifficulty teleportDifficulty = getTeleportUidFromDifficulty(difficulty);
+        updateTeleports(Map.of(), Map.of(difficulty, Set.of(uid)));
+    }
 
-        if (teleportDifficulty == null) {
-            throw new UnhandledRuntimeException("error creating teleport");
+    public void insertTeleport(int difficulty, UID uid) {
+        updateTeleports(Map.of(difficulty, Set.of(uid)), Map.of());
+    }
+
+    /**
+     * Inserts and removes teleports of several difficulties in a single transaction. The teleport segment of each
+     * difficulty is read once, all new teleports of a difficulty are inserted at the same offset and
+     * teleportUIDsSize is set once with the final count.
+     *
+     * @param insert teleports to unlock, by difficulty
+     * @param remove teleports to remove, by difficulty
+     */
+    public void updateTeleports(Map<Integer, Set<UID>> insert, Map<Integer, Set<UID>> remove) {
+        for (int difficulty : insert.keySet()) {
+            if (!insert.get(difficulty).isEmpty() && difficulty > getDifficulty()) {
+                throw new UnhandledRuntimeException(String.format("character doesn't have the difficulty %d unlocked", difficulty));
+            }
         }
 
-        VariableInfo uidsSize = getTeleportUIDsSizeVar(difficulty);
+        Set<Integer> difficulties = new TreeSet<>(insert.keySet());
+        difficulties.addAll(remove.keySet());
 
-        List<VariableInfo> toRemove = new ArrayList<>();
-        for (VariableInfo stagingVar : teleportDifficulty.getBlockInfo().getStagingVariables().values()) {
-            if (stagingVar.getVariableType().equals(VariableType.UID) && stagingVar.getName().equals(Constants.Save.VAR_TELEPORTUID)) {
-                UID uidTp;
-                try {
-                    uidTp = new UID((byte[]) stagingVar.getValue());
-                } catch (IllegalArgumentException e) {
-                    logger.log(WARNING, "Invalid map teleport data, uid: " + stagingVar.getValueString());
-                    continue;
+        getDataMap().edit(tx -> {
+            for (int difficulty : difficulties) {
+                TeleportDifficulty teleportDifficulty = getTeleportUidFromDifficulty(difficulty);
+                if (teleportDifficulty == null) {
+                    throw new UnhandledRuntimeException("error creating teleport");
                 }
-                if (uidTp.equals(uid)) {
-                    logger.log(DEBUG, "------------- removing portal " + uid + ".");
-                    toRemove.add(stagingVar);
+                int count = removeTeleports(teleportDifficulty, remove.getOrDefault(difficulty, Set.of()));
+                count += insertTeleports(teleportDifficulty, insert.getOrDefault(difficulty, Set.of()));
+                if (count != 0) {
+                    tx.setInt(getTeleportUIDsSizeVar(difficulty), teleportDifficulty.getTeleports().size() + count);
                 }
             }
+        });
+    }
+
+    private int removeTeleports(TeleportDifficulty teleportDifficulty, Set<UID> uids) {
+        if (uids.isEmpty()) {
+            return 0;
         }
 
+        int removed = 0;
         for (VariableInfo vi : teleportDifficulty.getVariables()) {
-            if (vi.getVariableType().equals(VariableType.UID) && vi.getName().equals(Constants.Save.VAR_TELEPORTUID)) {
-                MapTeleport currentTeleport;
-                UID uidTp = new UID((byte[]) vi.getValue());
-                try {
-                    currentTeleport = DefaultMapTeleport.get(uidTp);
-                } catch (NoSuchElementException e) {
-                    logger.log(WARNING, "Invalid map teleport data, uid: " + vi.getValueString(), e);
-                    continue;
-                }
-
-                if (currentTeleport.getUid().equals(uid)) {
-                    logger.log(DEBUG, "------------- removing portal " + uid);
-                    toRemove.add(vi);
-                }
+            if (!vi.getVariableType().equals(VariableType.UID) || !vi.getName().equals(Constants.Save.VAR_TELEPORTUID)) {
+                continue;
+            }
+            UID uidTp;
+            try {
+                uidTp = new UID((byte[]) vi.getValue());
+            } catch (IllegalArgumentException e) {
+                logger.log(WARNING, "Invalid map teleport data, uid: " + vi.getValueString());
+                continue;
+            }
+            if (uids.contains(uidTp)) {
+                logger.log(DEBUG, "------------- removing portal " + uidTp);
+                getDataMap().removeVariable(vi);
+                removed--;
             }
         }
-
-        for (VariableInfo v : toRemove) {
-            getDataMap().removeVariable(v);
-            getDataMap().decrementInt(uidsSize);
-        }
+        return removed;
     }
 
-    public void insertTeleport(int difficulty, UID uid) {
-        TeleportDifficulty teleportDifficulty = getTeleportUidFromDifficulty(difficulty);
-
-        if (difficulty > getDifficulty()) {
-            throw new UnhandledRuntimeException(String.format("character doesn't have the difficulty %d unlocked", difficulty));
+    private int insertTeleports(TeleportDifficulty teleportDifficulty, Set<UID> uids) {
+        if (uids.isEmpty()) {
+            return 0;
         }
 
-        if (teleportDifficulty == null) {
-            throw new UnhandledRuntimeException("error creating teleport");
-        }
         int teleportUIDsSizeKeyLength = 4 + Constants.Save.VAR_TELEPORTUIDSSIZE.length();
         int teleportUIDKeyLength = 4 + Constants.Save.VAR_TELEPORTUID.length();
-
         int offset = teleportDifficulty.getOffset() + (teleportUIDsSizeKeyLength + 4);
+        if (offset <= 200) {
+            throw new UnhandledRuntimeException("error creating teleport, offset not found");
+        }
+
+        Set<UID> existing = new HashSet<>();
         for (VariableInfo r : teleportDifficulty.getVariables()) {
             VariableInfo vi = getDataMap().getChangesForVariable(r);
-            if (vi.getVariableType().equals(VariableType.UID) && vi.getName().equals(Constants.Save.VAR_TELEPORTUID)) {
-                MapTeleport currentTeleport;
+            if (vi.getVariableType().equals(VariableType.UID) && vi.getName().equals(Constants.Save.VAR_TELEPORTUID)
+                    && !getDataMap().isVariableRemoved(r)) {
                 try {
-                    currentTeleport = DefaultMapTeleport.get(new UID((byte[]) vi.getValue()));
-                } catch (NoSuchElementException e) {
+                    existing.add(new UID((byte[]) vi.getValue()));
+                } catch (IllegalArgumentException e) {
                     logger.log(WARNING, "Invalid map teleport data, uid: " + vi.getValueString(), e);
-                    continue;
                 }
+            }
+        }
 
-                if (currentTeleport.getUid().equals(uid)) {
-                    logger.log(WARNING, "------------- portal ''{0}'' already exists for difficulty ''{1}''", uid, difficulty);
-                    return;
-                }
+        int blockOffset = getTeleportUIDsSizeVar(teleportDifficulty.getDifficulty()).getBlockOffset();
+        int inserted = 0;
+        for (UID uid : uids) {
+            if (!existing.add(uid)) {
+                logger.log(DEBUG, "portal ''{0}'' already exists for difficulty ''{1}''", uid, teleportDifficulty.getDifficulty());
+                continue;
             }
+            VariableInfo newVi = new VariableInfo();
+            newVi.setBlockOffset(blockOffset);
+            newVi.setVariableType(VariableType.UID);
+            newVi.setName(Constants.Save.VAR_TELEPORTUID);
+            newVi.setValue(uid.getBytes());
+            newVi.setKeyOffset(offset);
+            newVi.setValOffset(offset + teleportUIDKeyLength);
+            newVi.setValSize(VariableType.UID.dataTypeSize());
+            getDataMap().insertVariable(newVi);
+            inserted++;
         }
+        return inserted;
+    }
 
-        if (offset <= 200) {
-            throw new UnhandledRuntimeException("error creating teleport, offset not found");
+    /**
+     * Offsets of the teleport segment of each difficulty in PLAYER_MAIN. They only depend on the parsed file,
+     * so they are computed once per block table; teleports staged or removed since are applied on read.
+     */
+    private List<TeleportSegment> getTeleportSegments(BlockInfo block) {
+        TeleportSegments current = teleportSegments;
+        if (current != null && current.block() == block) {
+            return current.segments();
         }
 
-        VariableInfo uidSize = teleportDifficulty.getBlockInfo().getVariables().get(Constants.Save.VAR_TELEPORTUIDSSIZE).get(difficulty);
-        VariableInfo newVi = new VariableInfo();
-        newVi.setBlockOffset(uidSize.getBlockOffset());
-        newVi.setVariableType(VariableType.UID);
-        newVi.setName(Constants.Save.VAR_TELEPORTUID);
-        newVi.setValue(uid.getBytes());
-        newVi.setKeyOffset(offset);
-        newVi.setValOffset(offset + teleportUIDKeyLength);
-        newVi.setValSize(VariableType.UID.dataTypeSize());
-        getDataMap().insertVariable(newVi);
-        getDataMap().incrementInt(uidSize);
+        ImmutableListMultimap<String, VariableInfo> sortedVariables = getDataMap().getSortedVariables(block);
+        List<VariableInfo> teleportUidsSizeVars = sortedVariables.get(Constants.Save.VAR_TELEPORTUIDSSIZE);
+        List<VariableInfo> teleportUidVars = sortedVariables.get(Constants.Save.VAR_TELEPORTUID);
+
+        //teleports of a difficulty are the ones between its teleportUIDsSize and the next one
+        List<TeleportSegment> segments = new ArrayList<>();
+        int next = 0;
+        for (int d = 0; d < teleportUidsSizeVars.size(); d++) {
+            VariableInfo size = teleportUidsSizeVars.get(d);
+            int nextSizeOffset = d + 1 < teleportUidsSizeVars.size()
+                    ? teleportUidsSizeVars.get(d + 1).getKeyOffset() : Integer.MAX_VALUE;
+            int startOffset = size.getKeyOffset() + size.getVariableBytesLength();
+            int endOffset = startOffset;
+            List<VariableInfo> uids = new ArrayList<>();
+            for (; next < teleportUidVars.size() && teleportUidVars.get(next).getKeyOffset() < nextSizeOffset; next++) {
+                VariableInfo v = teleportUidVars.get(next);
+                if (v.getKeyOffset() >= size.getKeyOffset()) {
+                    endOffset = v.getValOffset() + v.getValSize() - 1;
+                    uids.add(v);
+                }
+            }
+            segments.add(new TeleportSegment(size, startOffset, endOffset, List.copyOf(uids)));
+        }
+
+        teleportSegments = new TeleportSegments(block, List.copyOf(segments));
+        return teleportSegments.segments();
     }
 
     private TeleportDifficulty getTeleportUidFromDifficulty(int difficulty) {
-        Optional<BlockInfo> first = getDataMap().getBlockInfo().values().stream().filter(
-                f -> f.getBlockType() == PlayerBlockType.PLAYER_MAIN).findFirst();
-
-        BlockInfo block;
-
-        if (first.isPresent()) {
-            block = first.get();
-        } else {
+        BlockInfo block = getDataMap().getFirstBlock(PlayerBlockType.PLAYER_MAIN);
+        if (block == null) {
             return null;
         }
 
-        List<VariableInfo> teleportUidsSizeVars = new ArrayList<>(Objects.requireNonNull(block).getVariables().get(Constants.Save.VAR_TELEPORTUIDSSIZE));
-        teleportUidsSizeVars.sort(Comparator.comparing(VariableInfo::getKeyOffset));
-        int offsetStart = teleportUidsSizeVars.get(difficulty).getKeyOffset();
-        VariableInfo size = teleportUidsSizeVars.get(difficulty);
+        TeleportSegment segment = getTeleportSegments(block).get(difficulty);
+        VariableInfo size = segment.size();
 
         List<VariableInfo> teleports = new ArrayList<>();
 
-        List<VariableInfo> teleportUidVars = block.getVariables().get(Constants.Save.VAR_TELEPORTUID)
-                .stream().sorted(Comparator.comparing(VariableInfo::getKeyOffset)).toList();
-
-        int curDiff = -1;
-        int startOffset = -1;
-        int endOffset = -1;
-
-        for (VariableInfo v : block.getVariables().values().stream().sorted(Comparator.comparing(VariableInfo::getKeyOffset)).toList()) {
-            if (!Constants.Save.VAR_TELEPORTUIDSSIZE.equals(v.getName()) && !Constants.Save.VAR_TELEPORTUID.equals(v.getName())) {
-                continue;
-            }
-            if (Constants.Save.VAR_TELEPORTUIDSSIZE.equals(v.getName())) {
-                curDiff++;
-                if (curDiff == difficulty) {
-                    startOffset = v.getKeyOffset() + v.getVariableBytesLength();
-                    endOffset = startOffset;
-                    continue;
-                }
-            }
-            if (curDiff == difficulty && v.getKeyOffset() >= teleportUidsSizeVars.get(curDiff).getKeyOffset()) {
-                endOffset = v.getValOffset() + v.getValSize() - 1;
-            }
-        }
-
         //search for teleports from savegame
-        for (VariableInfo v : teleportUidVars) {
-            if (getDataMap().isVariableRemoved(v)) { //skip pending remove teleports
-                continue;
-            }
-            if (v.getKeyOffset() >= startOffset && v.getKeyOffset() <= endOffset) {
+        for (VariableInfo v : segment.uids()) {
+            if (!getDataMap().isVariableRemoved(v)) { //skip pending remove teleports
                 teleports.add(v);
             }
         }
@@ -1057,20 +1193,28 @@ public class Player {
         //search for teleports pending save
         for (VariableInfo v : block.getStagingVariables().get(Constants.Save.VAR_TELEPORTUID)
                 .stream().sorted(Comparator.comparing(VariableInfo::getKeyOffset)).toList()) {
-            if (v.getKeyOffset() >= startOffset && v.getKeyOffset() <= endOffset) {
+            if (v.getKeyOffset() >= segment.startOffset() && v.getKeyOffset() <= segment.endOffset()) {
                 teleports.add(v);
             }
         }
 
-        logger.log(DEBUG, "difficulty{0}: start={1}; end={2}; count={3}; uidssize={4}", difficulty, startOffset, endOffset, teleports.size(), size.getValue());
+        logger.log(DEBUG, "difficulty{0}: start={1}; end={2}; count={3}; uidssize={4}", difficulty,
+                segment.startOffset(), segment.endOffset(), teleports.size(), size.getValue());
 
-        return new TeleportDifficulty(difficulty, (Integer) size.getValue(), offsetStart, teleports, block);
+        return new TeleportDifficulty(difficulty, (Integer) size.getValue(), size.getKeyOffset(), teleports, block);
     }
 
     public void reset() {
         State.get().setSaveInProgress(null);
+        unsavedChanges = Map.of();
         if (getSaveData() != null) {
             getSaveData().reset();
         }
     }
+
+    private record TeleportSegment(VariableInfo size, int startOffset, int endOffset, List<VariableInfo> uids) {
+    }
+
+    private record TeleportSegments(BlockInfo block, List<TeleportSegment> segments) {
+    }
 }
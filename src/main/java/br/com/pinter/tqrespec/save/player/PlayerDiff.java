@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.save.exporter.BlockDiff;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Loads two characters for a {@link BlockDiff}. Each side can be a Player.chr or a backup zip created by
+ * {@link PlayerWriter}.
+ */
+public final class PlayerDiff {
+    private static final String PLAYER_CHR = "Player.chr";
+
+    private PlayerDiff() {
+    }
+
+    public static BlockDiff compare(Path left, Path right) throws IOException {
+        PlayerParser leftParser = parser(left, right);
+        PlayerParser rightParser = parser(right, left);
+        leftParser.parse();
+        rightParser.parse();
+        return new BlockDiff(leftParser, rightParser);
+    }
+
+    private static PlayerParser parser(Path path, Path other) throws IOException {
+        if (!path.getFileName().toString().toLowerCase().endsWith(".zip")) {
+            return new PlayerParser(path.toFile(), playerName(path));
+        }
+
+        try (FileSystem zipFs = FileSystems.newFileSystem(path)) {
+            List<Path> found;
+            try (Stream<Path> files = Files.walk(zipFs.getPath("/"))) {
+                found = files.filter(f -> f.getFileName() != null && f.getFileName().toString().equals(PLAYER_CHR)).toList();
+            }
+
+            Path chr = null;
+            if (found.size() == 1) {
+                chr = found.getFirst();
+            } else if (other.getParent() != null) {
+                // full backups may contain more than one character, pick the one compared against
+                String dir = other.getParent().getFileName().toString();
+                chr = found.stream().filter(f -> f.getParent().getFileName() != null
+                        && f.getParent().getFileName().toString().equals(dir)).findFirst().orElse(null);
+            }
+
+            if (chr == null) {
+                throw new IOException(String.format("Character not found in backup '%s'", path));
+            }
+            return new PlayerParser(Files.readAllBytes(chr), playerName(chr));
+        }
+    }
+
+    private static String playerName(Path chr) {
+        Path parent = chr.getParent();
+        String dir = parent != null && parent.getFileName() != null ? parent.getFileName().toString() : "";
+        return dir.startsWith("_") ? dir.substring(1) : dir;
+    }
+}
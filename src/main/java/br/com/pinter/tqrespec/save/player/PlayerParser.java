@@ -23,6 +23,7 @@ package br.com.pinter.tqrespec.save.player;
 import br.com.pinter.tqrespec.logging.Log;
 import br.com.pinter.tqrespec.save.BlockInfo;
 import br.com.pinter.tqrespec.save.BlockType;
+import br.com.pinter.tqrespec.save.BufferPool;
 import br.com.pinter.tqrespec.save.FileBlockType;
 import br.com.pinter.tqrespec.save.FileParser;
 import br.com.pinter.tqrespec.save.FileVariable;
@@ -52,10 +53,24 @@ final class PlayerParser extends FileParser {
 
     private final String player;
     private final File playerChr;
+    private final byte[] playerData;
     private HeaderInfo headerInfo;
 
     PlayerParser(File playerChr, String playerName) {
         this.playerChr = playerChr;
+        this.playerData = null;
+        this.player = playerName;
+    }
+
+    /**
+     * Parser for a character already read into memory, e.g. extracted from a backup zip
+     *
+     * @param playerData raw Player.chr contents
+     * @param playerName name of the character
+     */
+    PlayerParser(byte[] playerData, String playerName) {
+        this.playerChr = null;
+        this.playerData = playerData;
         this.player = playerName;
     }
 
@@ -202,6 +217,12 @@ final class PlayerParser extends FileParser {
 
     @Override
     protected boolean readFile() throws IOException {
+        if (playerData != null) {
+            setBuffer(ByteBuffer.wrap(playerData));
+            this.getBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            return true;
+        }
+
         if (!playerChr.exists()) {
             logger.log(ERROR, "File ''{0}'' doesn't exists", playerChr.toString());
             throw new IOException("Couldn't load file");
@@ -209,12 +230,7 @@ final class PlayerParser extends FileParser {
 
         try (FileInputStream chr = new FileInputStream(playerChr)) {
             try (FileChannel in = chr.getChannel()) {
-                setBuffer(ByteBuffer.allocate((int) in.size()));
-                this.getBuffer().order(ByteOrder.LITTLE_ENDIAN);
-
-                while (true) {
-                    if (in.read(this.getBuffer()) <= 0) break;
-                }
+                setBuffer(BufferPool.read(in, (int) in.size()));
             }
         }
 
@@ -262,6 +278,7 @@ final class PlayerParser extends FileParser {
         if (getSpecialVariableStore().get(key).size() == 1) {
             VariableInfo difficulty = getSpecialVariableStore().get(key).getFirst();
             difficulty.setAlias("difficulty");
+            putAliasIndex(difficulty);
             logger.log(DEBUG, logMsg, block.getStart(), difficulty.toString());
         } else if (getSpecialVariableStore().get(key).size() == 5) {
             VariableInfo str = getSpecialVariableStore().get(key).get(0);
@@ -274,6 +291,11 @@ final class PlayerParser extends FileParser {
             inl.setAlias("int");
             life.setAlias("life");
             mana.setAlias("mana");
+            putAliasIndex(str);
+            putAliasIndex(dex);
+            putAliasIndex(inl);
+            putAliasIndex(life);
+            putAliasIndex(mana);
 
             logger.log(DEBUG, logMsg, block.getStart(), str.toString());
             logger.log(DEBUG, logMsg, block.getStart(), dex.toString());
@@ -24,10 +24,13 @@ import br.com.pinter.tqrespec.Settings;
 import br.com.pinter.tqrespec.core.State;
 import br.com.pinter.tqrespec.core.UnhandledRuntimeException;
 import br.com.pinter.tqrespec.logging.Log;
+import br.com.pinter.tqrespec.save.BufferPool;
+import br.com.pinter.tqrespec.save.ChangeJournal;
 import br.com.pinter.tqrespec.save.FileDataHolder;
 import br.com.pinter.tqrespec.save.FileDataMap;
 import br.com.pinter.tqrespec.save.FileWriter;
 import br.com.pinter.tqrespec.save.Platform;
+import br.com.pinter.tqrespec.save.PlatformConverter;
 import br.com.pinter.tqrespec.save.SaveLocation;
 import br.com.pinter.tqrespec.save.stash.StashLoader;
 import br.com.pinter.tqrespec.save.stash.StashWriter;
@@ -40,7 +43,9 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileAlreadyExistsException;
@@ -69,6 +74,7 @@ import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 public class PlayerWriter extends FileWriter {
     private static final System.Logger logger = Log.getLogger(PlayerWriter.class);
+    private static final Object backupLock = new Object();
     @Inject
     private CurrentPlayerData saveData;
 
@@ -85,16 +91,47 @@ public class PlayerWriter extends FileWriter {
         return false;
     }
 
+    @Override
+    public boolean isVerify() {
+        return Settings.getVerifySave();
+    }
+
     @Override
     protected FileDataHolder getSaveData() {
         return saveData;
     }
 
-    @SuppressWarnings("SameParameterValue")
-    private boolean backupSaveGame(String fileName, String playerName) throws IOException {
+    /**
+     * Backup of the character currently loaded. Only the location of the character is captured when prepared,
+     * the files are read from disk when the backup is created, before the character is saved.
+     */
+    public final class Backup {
+        private final Path playerChr;
+        private final String playerName;
+        private final Path playerPath;
+
+        private Backup() {
+            playerChr = saveData.getPlayerChr();
+            playerName = saveData.getPlayerName();
+            playerPath = saveData.getPlayerPath();
+        }
+
+        public boolean create() throws IOException {
+            synchronized (backupLock) {
+                return backupSaveGame(this);
+            }
+        }
+    }
+
+    public Backup prepareBackup() {
+        return new Backup();
+    }
+
+    private boolean backupSaveGame(Backup backup) throws IOException {
         File backupDirectory = new File(gameInfo.getSavePath(), Constants.BACKUP_DIRECTORY);
         logger.log(INFO, "creating backup at " + backupDirectory.getAbsolutePath());
-        Path player = Paths.get(fileName);
+        Path player = backup.playerChr;
+        String playerName = backup.playerName;
         SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd_HH");
         String ts = df.format(new Date());
         boolean fullBackup = Settings.getAlwaysFullBackup();
@@ -163,9 +200,9 @@ public class PlayerWriter extends FileWriter {
                     addLevelsFilesToFs(zipFs, player.getParent(), zipFs.getPath(root.toString(), "/" + player.getName(player.getNameCount() - 2)));
                     Path destPlayer = zipFs.getPath("/" + player.getName(player.getNameCount() - 2) + "/" + player.getFileName());
 
-                    Path srcDxb = Paths.get(saveData.getPlayerPath().toString(), "winsys.dxb");
+                    Path srcDxb = Paths.get(backup.playerPath.toString(), "winsys.dxb");
                     Path destDxb = zipFs.getPath("/" + player.getName(player.getNameCount() - 2) + "/winsys.dxb");
-                    Path srcDxg = Paths.get(saveData.getPlayerPath().toString(), "winsys.dxg");
+                    Path srcDxg = Paths.get(backup.playerPath.toString(), "winsys.dxg");
                     Path destDxg = zipFs.getPath("/" + player.getName(player.getNameCount() - 2) + "/winsys.dxg");
 
                     Files.copy(player, destPlayer, StandardCopyOption.REPLACE_EXISTING);
@@ -239,21 +276,30 @@ public class PlayerWriter extends FileWriter {
     }
 
     public boolean backupCurrent() throws IOException {
-        String playerChr = saveData.getPlayerChr().toString();
-        String playerName = saveData.getPlayerName();
-        return this.backupSaveGame(playerChr, playerName);
+        return prepareBackup().create();
     }
 
     public boolean save() {
         if (State.get().isSaveInProgress()) {
             return false;
         }
+        EditSession session = saveData.getSession();
+        // once saved in background, the file is compared to the changes written then
+        boolean written = session.getWritten() != null;
+        if (!written && !saveData.getDataMap().isDirty()) {
+            logger.log(INFO, "No changes to save for character ''{0}''", saveData.getPlayerName());
+            return true;
+        }
         State.get().setSaveInProgress(true);
         Path chrPath = saveData.getPlayerChr();
         String rootPath = chrPath.getRoot() + chrPath.subpath(0, chrPath.getNameCount() - 1).toString();
         String playerChr = chrPath.getFileName().toString();
         try {
-            this.writeBuffer(rootPath, playerChr);
+            if (written) {
+                saveWritten(session);
+            } else {
+                this.writeBuffer(rootPath, playerChr);
+            }
             State.get().setSaveInProgress(false);
             return true;
         } catch (IOException e) {
@@ -262,6 +308,29 @@ public class PlayerWriter extends FileWriter {
         }
     }
 
+    /**
+     * Write the changes that differ from the ones the file was written with in background
+     */
+    private void saveWritten(EditSession session) throws IOException {
+        Map<Integer, ChangeJournal.Pending> staged = saveData.getDataMap().getStagedChanges();
+        EditSession.Snapshot snapshot = session.beginWrite();
+        if (snapshot == null) {
+            throw new IOException("Character not loaded");
+        }
+        try {
+            EditSession.Written written = DetachedWriter.write(snapshot, staged, session.isStale(), isVerify());
+            if (written == snapshot.written()) {
+                logger.log(INFO, "No changes to save for character ''{0}''", snapshot.playerName());
+            }
+            session.commitWrite(snapshot, written, staged);
+        } catch (IOException | RuntimeException e) {
+            session.abortWrite(snapshot, staged);
+            throw e;
+        } finally {
+            session.endWrite();
+        }
+    }
+
     public void copyCurrentSave(String toPlayerName) throws IOException {
         List<PlayerCharacterFile> playerCharacterList = gameInfo.getPlayerCharacterList(SaveLocation.MAIN, SaveLocation.ARCHIVEMAIN);
         if (playerCharacterList.stream().anyMatch(f -> f.getPlayerName().equalsIgnoreCase(toPlayerName))) {
@@ -299,27 +368,35 @@ public class PlayerWriter extends FileWriter {
                 throw new FileAlreadyExistsException("Target directory already exists: " + playerSaveDirTarget);
             }
 
-            FileDataMap fileDataMap = (FileDataMap) saveData.getDataMap().deepClone();
-
-            if (!toPlayerName.equals(saveData.getDataMap().getCharacterName())) {
-                // set name before conversion
-                fileDataMap.setString("myPlayerName", toPlayerName);
-                if (fileDataMap.getPlatform().equals(Platform.MOBILE) && conversionTarget.equals(Platform.UNDEFINED)) {
-                    //use new saveid
-                    fileDataMap.setString("mySaveId", saveId);
-                    toZipPath = mobSavePrefix + saveId;
-                }
-            } else if (saveData.getPlatform().equals(Platform.MOBILE) && conversionTarget.equals(Platform.UNDEFINED)) {
-                //use current saveid for directory name
-                String currentSaveId = saveData.getDataMap().getString("mySaveId");
-                toZipPath = mobSavePrefix + currentSaveId;
-            }
+            FileDataMap fileDataMap = null;
+            List<ByteBuffer> converted = null;
 
             if (!conversionTarget.equals(Platform.UNDEFINED)) {
                 if (conversionTarget.equals(Platform.MOBILE)) {
                     toZipPath = mobSavePrefix + saveId;
                 }
-                fileDataMap.convertTo(conversionTarget, saveId);
+                // converted in a single pass and streamed from the source buffer, leaving the current character untouched
+                PlatformConverter converter = new PlatformConverter(saveData.getDataMap(), saveData.getBuffer(), conversionTarget)
+                        .saveId(saveId);
+                if (!toPlayerName.equals(saveData.getDataMap().getCharacterName())) {
+                    converter.playerName(toPlayerName);
+                }
+                converted = converter.segments();
+            } else {
+                fileDataMap = (FileDataMap) saveData.getDataMap().deepClone();
+
+                if (!toPlayerName.equals(saveData.getDataMap().getCharacterName())) {
+                    fileDataMap.setString("myPlayerName", toPlayerName);
+                    if (fileDataMap.getPlatform().equals(Platform.MOBILE)) {
+                        //use new saveid
+                        fileDataMap.setString("mySaveId", saveId);
+                        toZipPath = mobSavePrefix + saveId;
+                    }
+                } else if (saveData.getPlatform().equals(Platform.MOBILE)) {
+                    //use current saveid for directory name
+                    String currentSaveId = saveData.getDataMap().getString("mySaveId");
+                    toZipPath = mobSavePrefix + currentSaveId;
+                }
             }
 
             if (zipOutputPath != null) {
@@ -334,8 +411,14 @@ public class PlayerWriter extends FileWriter {
                     }
                     copyDirectoryRecurse(playerSaveDirSource, dir, false, zipfs, excludeCopyRegex);
                     if (!backupOnly) {
-                        Files.deleteIfExists(zipfs.getPath(dir.toString(), Constants.PLAYERCHR));
-                        writeBuffer(dir.toString(), Constants.PLAYERCHR, fileDataMap, zipfs);
+                        // streamed into the entry, a channel on a zip entry would stage the file in a temporary copy
+                        try (OutputStream out = Files.newOutputStream(zipfs.getPath(dir.toString(), Constants.PLAYERCHR))) {
+                            if (converted != null) {
+                                writeTo(out, converted);
+                            } else {
+                                writeTo(out, fileDataMap);
+                            }
+                        }
                     }
                 }
             } else {
@@ -344,11 +427,16 @@ public class PlayerWriter extends FileWriter {
                     excludeCopyRegex = "(?i)(?:^backup.*|^.winsys.dxg$|^.winsys.dxb$|^SavingChar.txt$)";
                 }
                 copyDirectoryRecurse(playerSaveDirSource, playerSaveDirTarget, false, excludeCopyRegex);
-                writeBuffer(playerSaveDirTarget.toString(), Constants.PLAYERCHR, fileDataMap);
+                if (converted != null) {
+                    writeBuffer(playerSaveDirTarget.toString(), Constants.PLAYERCHR, converted, FileSystems.getDefault());
+                } else {
+                    writeBuffer(playerSaveDirTarget.toString(), Constants.PLAYERCHR, fileDataMap);
+                }
                 StashLoader stashLoader = new StashLoader();
                 if (stashLoader.loadStash(playerSaveDirTarget, toPlayerName)) {
-                    StashWriter stashWriter = new StashWriter(stashLoader.getSaveData());
+                    StashWriter stashWriter = new StashWriter(stashLoader.getSaveData(), Settings.getVerifySave());
                     stashWriter.save();
+                    BufferPool.release(stashLoader.getSaveData().getBuffer());
                 }
             }
         } catch (IOException e) {
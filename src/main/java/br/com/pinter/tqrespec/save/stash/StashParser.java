@@ -23,6 +23,7 @@ package br.com.pinter.tqrespec.save.stash;
 import br.com.pinter.tqrespec.logging.Log;
 import br.com.pinter.tqrespec.save.BlockInfo;
 import br.com.pinter.tqrespec.save.BlockType;
+import br.com.pinter.tqrespec.save.BufferPool;
 import br.com.pinter.tqrespec.save.FileParser;
 import br.com.pinter.tqrespec.save.FileVariable;
 import br.com.pinter.tqrespec.save.Platform;
@@ -31,8 +32,6 @@ import br.com.pinter.tqrespec.util.Constants;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -58,12 +57,7 @@ class StashParser extends FileParser {
         }
         try (FileInputStream chr = new FileInputStream(getStashFileName())) {
             try (FileChannel in = chr.getChannel()) {
-                setBuffer(ByteBuffer.allocate((int) in.size()));
-                this.getBuffer().order(ByteOrder.LITTLE_ENDIAN);
-
-                while (true) {
-                    if (in.read(this.getBuffer()) <= 0) break;
-                }
+                setBuffer(BufferPool.read(in, (int) in.size()));
             }
         }
 
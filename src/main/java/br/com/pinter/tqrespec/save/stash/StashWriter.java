@@ -26,6 +26,8 @@ import br.com.pinter.tqrespec.save.FileWriter;
 import br.com.pinter.tqrespec.util.Constants;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static java.lang.System.Logger.Level.ERROR;
 
@@ -35,9 +37,15 @@ public class StashWriter extends FileWriter {
     private final StashData saveData;
     private final int crcOffset;
     private final boolean createCrc;
+    private final boolean verify;
 
     public StashWriter(StashData saveData) {
+        this(saveData, true);
+    }
+
+    public StashWriter(StashData saveData, boolean verify) {
         this.saveData = saveData;
+        this.verify = verify;
         createCrc = true;
         crcOffset = 0;
     }
@@ -45,10 +53,10 @@ public class StashWriter extends FileWriter {
     public boolean save() {
         try {
             String fName = String.format("%s/winsys.dxb", saveData.getPlayerPath());
-            getSaveData().getDataMap().setString("fName", fName);
-            writeBuffer(saveData.getPlayerPath().toString(), Constants.STASH_FILE);
-            getSaveData().getDataMap().setString("fName", fName.replaceAll("\\.dxb$", ".dxg"));
-            writeBuffer(saveData.getPlayerPath().toString(), Constants.STASH_FILE_BACKUP);
+            Map<String, String> targets = new LinkedHashMap<>();
+            targets.put(Constants.STASH_FILE, fName);
+            targets.put(Constants.STASH_FILE_BACKUP, fName.replaceAll("\\.dxb$", ".dxg"));
+            writeBuffers(saveData.getPlayerPath().toString(), "fName", targets);
             return true;
         } catch (IOException e) {
             logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
@@ -64,6 +72,11 @@ public class StashWriter extends FileWriter {
         return createCrc;
     }
 
+    @Override
+    public boolean isVerify() {
+        return verify;
+    }
+
     @Override
     protected FileDataHolder getSaveData() {
         return saveData;
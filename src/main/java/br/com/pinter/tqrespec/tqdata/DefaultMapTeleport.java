@@ -23,10 +23,16 @@ package br.com.pinter.tqrespec.tqdata;
 import br.com.pinter.tqrespec.save.UID;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class DefaultMapTeleport extends MapTeleport {
     private static final List<MapTeleport> tp = new ArrayList<>();
+    private static final Map<Integer, MapTeleport> byOrder = new HashMap<>();
+    private static final Map<UID, MapTeleport> byUid = new HashMap<>();
+    private static final Map<String, MapTeleport> byRecordId = new HashMap<>();
 
     static {
         /* Greece */
@@ -152,6 +158,13 @@ public class DefaultMapTeleport extends MapTeleport {
                 DefaultAct.EAST, "RECORDS\\ITEM\\SHRINES\\TELEPORTCHINA\\TELEPORTSHRINEEGYPTCITY06.DBR", "x4tagMZone11"));
         tp.add(new DefaultMapTeleport(54, new UID("2083417698-3042987760-2257834914-3140259809"),
                 DefaultAct.EAST, "RECORDS\\ITEM\\SHRINES\\TELEPORTCHINA\\TELEPORTSHRINEMARSHLAND07.DBR", "x4tagMZone09"));
+
+        // keep the first entry when a key is duplicated
+        for (MapTeleport m : tp) {
+            byOrder.putIfAbsent(m.getOrder(), m);
+            byUid.putIfAbsent(m.getUid(), m);
+            byRecordId.putIfAbsent(m.getRecordId(), m);
+        }
     }
 
     public DefaultMapTeleport(int order, UID uid, DefaultAct act, String recordId, String tag) {
@@ -163,16 +176,24 @@ public class DefaultMapTeleport extends MapTeleport {
     }
 
 
+    private static <K> MapTeleport find(Map<K, MapTeleport> index, K key) {
+        MapTeleport found = index.get(key);
+        if (found == null) {
+            throw new NoSuchElementException("No value present");
+        }
+        return new DefaultMapTeleport(found);
+    }
+
     public static MapTeleport get(int order) {
-        return new DefaultMapTeleport(tp.stream().filter(f -> f.getOrder() == order).findFirst().orElseThrow());
+        return find(byOrder, order);
     }
 
     public static MapTeleport get(UID uid) {
-        return new DefaultMapTeleport(tp.stream().filter(f -> f.getUid().equals(uid)).findFirst().orElseThrow());
+        return find(byUid, uid);
     }
 
     public static MapTeleport get(String recordId) {
-        return new DefaultMapTeleport(tp.stream().filter(f -> f.getRecordId().equals(recordId)).findFirst().orElseThrow());
+        return find(byRecordId, recordId);
     }
 
     public static List<MapTeleport> getAll() {
@@ -45,6 +45,7 @@ public final class Constants {
     public static final String SETTINGS = "Settings";
     public static final String JAVA_USERDIR = System.getProperty("user.dir");
     public static final String BACKUP_DIRECTORY = Paths.get(SAVEDATA, "TQRespec Backup").toString();
+    public static final String JOURNAL_DIRECTORY = Paths.get(BACKUP_DIRECTORY, "journal").toString();
     public static final String VERSION_CHECK_URL = "https://epinter.github.io/version/tqrespec";
     public static final String DEV_GAMEDATA = Paths.get(JAVA_USERDIR, "gamedata").toString();
     public static final String PARENT_GAMEDATA = Paths.get(Paths.get(JAVA_USERDIR).getParent().toString(), "gamedata").toString();
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+    @Test
+    void release_Should_ignoreBufferNotAcquiredFromPool() {
+        ByteBuffer owned = ByteBuffer.allocate(8192);
+        long retained = BufferPool.getRetained();
+
+        BufferPool.release(owned);
+
+        assertEquals(retained, BufferPool.getRetained());
+        for (int i = 0; i < 4; i++) {
+            assertNotSame(owned.array(), BufferPool.acquire(8192).array());
+        }
+    }
+
+    @Test
+    void release_Should_reuseAcquiredBufferOnce() {
+        ByteBuffer buffer = BufferPool.acquire(5000);
+        long retained = BufferPool.getRetained();
+
+        BufferPool.release(buffer);
+        BufferPool.release(buffer);
+
+        assertEquals(retained + buffer.array().length, BufferPool.getRetained());
+        assertSame(buffer.array(), BufferPool.acquire(6000).array());
+        assertEquals(retained, BufferPool.getRetained());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import br.com.pinter.tqrespec.save.stash.StashData;
+import br.com.pinter.tqrespec.save.stash.StashLoader;
+import br.com.pinter.tqrespec.util.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeJournalTest {
+    private Path dir;
+    private Path stash;
+    private Path journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal");
+        stash = dir.resolve(Constants.STASH_FILE);
+        Files.copy(Paths.get("src/test/resources/_savegame", Constants.STASH_FILE), stash);
+        journal = dir.resolve("stash.journal");
+    }
+
+    private StashData load() {
+        StashLoader stashLoader = new StashLoader();
+        assertTrue(stashLoader.loadStash(dir, "journal"));
+        return stashLoader.getSaveData();
+    }
+
+    @Test
+    void recover_Should_leaveStagedChangesToBeRestored() throws IOException {
+        byte[] original = Files.readAllBytes(stash);
+        StashData stashData = load();
+        FileDataMap dataMap = stashData.getDataMap();
+        int width = dataMap.getInt("sackWidth");
+        dataMap.setJournal(ChangeJournal.open(journal, stashData.getBuffer()));
+        dataMap.setInt("sackWidth", width + 1);
+        dataMap.writeInt(dataMap.handle("sackHeight"), 77);
+        dataMap.getJournal().sync();
+
+        assertFalse(ChangeJournal.recover(journal, stash));
+        assertTrue(Files.exists(journal));
+        assertArrayEquals(original, Files.readAllBytes(stash));
+
+        stashData = load();
+        FileDataMap restored = stashData.getDataMap();
+        ChangeJournal reopened = ChangeJournal.open(journal, stashData.getBuffer());
+        Map<Integer, ChangeJournal.Pending> previous = reopened.previous();
+        assertEquals(2, previous.size());
+        assertTrue(restored.restore(previous));
+        assertEquals(width + 1, restored.getInt("sackWidth"));
+        assertEquals(77, restored.getInt("sackHeight"));
+        assertTrue(restored.isDirty());
+
+        reopened.dropPrevious();
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    void put_Should_leaveWritingToBackgroundSync() {
+        StashData stashData = load();
+        FileDataMap dataMap = stashData.getDataMap();
+        dataMap.setJournal(ChangeJournal.open(journal, stashData.getBuffer()));
+
+        dataMap.setInt("sackWidth", dataMap.getInt("sackWidth") + 1);
+        assertFalse(Files.exists(journal));
+
+        dataMap.getJournal().sync();
+        assertTrue(Files.exists(journal));
+        assertEquals(1, ChangeJournal.open(journal, stashData.getBuffer()).previous().size());
+    }
+
+    @Test
+    void open_Should_recordChangesAgainstContentWritten() {
+        ByteBuffer original = ByteBuffer.wrap(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+        ByteBuffer written = ByteBuffer.wrap(new byte[]{0, 1, 20, 21, 22, 4, 5, 6, 7, 8, 9});
+        ChangeJournal changeJournal = ChangeJournal.open(journal, original, written,
+                Map.of(2, new ChangeJournal.Pending(2, new byte[]{20, 21, 22})));
+
+        changeJournal.put(6, 2, new byte[]{40, 41});
+        changeJournal.drop(2);
+        changeJournal.sync();
+
+        Map<Integer, ChangeJournal.Pending> previous = ChangeJournal.open(journal, written).previous();
+        assertEquals(Set.of(2, 7), previous.keySet());
+        assertEquals(3, previous.get(2).previousLength());
+        assertArrayEquals(new byte[]{2, 3}, previous.get(2).data());
+        assertArrayEquals(new byte[]{40, 41}, previous.get(7).data());
+    }
+
+    @Test
+    void recover_Should_discardJournalOfAnotherContent() throws IOException {
+        StashData stashData = load();
+        FileDataMap dataMap = stashData.getDataMap();
+        dataMap.setJournal(ChangeJournal.open(journal, stashData.getBuffer()));
+        dataMap.setInt("sackWidth", dataMap.getInt("sackWidth") + 1);
+        dataMap.getJournal().sync();
+
+        byte[] changed = Files.readAllBytes(stash);
+        changed[100] ^= 1;
+        Files.write(stash, changed);
+
+        assertFalse(ChangeJournal.recover(journal, stash));
+        assertFalse(Files.exists(journal));
+        assertArrayEquals(changed, Files.readAllBytes(stash));
+    }
+
+    @Test
+    void recover_Should_completeInterruptedPatch() throws IOException {
+        StashData stashData = load();
+        byte[] content = Files.readAllBytes(stash);
+        int offset = stashData.getDataMap().handle("sackWidth").getVariable().getValOffset();
+        ByteBuffer width = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 9);
+        ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, 9);
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ChangeJournal changeJournal = ChangeJournal.open(journal, stashData.getBuffer());
+        assertTrue(changeJournal.beginPatch(content.length, (int) crc.getValue(), Map.of(offset, width)));
+
+        assertTrue(ChangeJournal.recover(journal, stash));
+        assertFalse(Files.exists(journal));
+        assertArrayEquals(content, Files.readAllBytes(stash));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.anyMatch(f -> f.getFileName().toString().startsWith("stash.journal.")
+                    && f.getFileName().toString().endsWith(".bak")));
+        }
+        assertEquals(9, load().getDataMap().getInt("sackWidth"));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Crc32Test {
+    @Test
+    void crc32_Should_combineCrcOfSegments() throws IOException {
+        ByteBuffer stash = ByteBuffer.wrap(Files.readAllBytes(Paths.get("src/test/resources/_savegame/winsys.dxb")))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int stored = stash.getInt(0);
+        stash.putInt(0, 0);
+        assertEquals(stored, Crc32.of(stash));
+
+        int split = stash.capacity() / 3;
+        int head = Crc32.of(stash.duplicate().limit(split));
+        int tail = Crc32.of(stash.duplicate().position(split));
+        assertEquals(stored, Crc32.combine(head, tail, stash.capacity() - split));
+        assertEquals(stored, Crc32.update(head, stash.duplicate().position(split)));
+        assertEquals(stored, new Crc32.Index(stash).crc(0, stash.capacity()));
+        assertEquals(tail, new Crc32.Index(stash).crc(split, stash.capacity()));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataChangeVariableTest {
+    private VariableInfo money;
+    private DataChangeVariable change;
+
+    @BeforeEach
+    void setUp() {
+        money = VariableInfo.builder().name("money").variableType(VariableType.INTEGER)
+                .keyOffset(100).valOffset(109).blockOffset(50).value(10).build();
+        change = new DataChangeVariable(money, withValue(20));
+    }
+
+    private VariableInfo withValue(int value) {
+        return VariableInfo.builder().name("money").variableType(VariableType.INTEGER)
+                .keyOffset(100).valOffset(109).blockOffset(50).value(value).build();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] p : parts) {
+            length += p.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] p : parts) {
+            buffer.put(p);
+        }
+        return buffer.array();
+    }
+
+    @Test
+    void data_Should_returnCachedBytesWhileUnchanged() {
+        byte[] data = change.data();
+
+        assertArrayEquals(withValue(20).bytes(), data);
+        assertSame(data, change.data());
+    }
+
+    @Test
+    void putVariable_Should_invalidateCachedBytes() {
+        byte[] before = change.data();
+
+        change.putVariable(withValue(30), 0);
+        assertArrayEquals(withValue(30).bytes(), change.data());
+
+        change.putVariable(withValue(40), 1);
+        assertArrayEquals(concat(withValue(30).bytes(), withValue(40).bytes()), change.data());
+
+        change.putVariable(withValue(50), -1);
+        assertArrayEquals(concat(withValue(50).bytes(), withValue(30).bytes(), withValue(40).bytes()), change.data());
+        assertArrayEquals(withValue(20).bytes(), before);
+    }
+
+    @Test
+    void addVar_Should_invalidateCachedBytes() {
+        change.data();
+
+        change.addVar("money");
+
+        byte[] name = "money".getBytes(StandardCharsets.UTF_8);
+        byte[] key = ByteBuffer.allocate(4 + name.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(name.length).put(name).array();
+        assertArrayEquals(concat(key, withValue(20).bytes()), change.data());
+    }
+
+    @Test
+    void setPadding_Should_invalidateCachedBytes() {
+        change.data();
+        byte[] padding = {1, 2, 3};
+
+        change.setPadding(padding);
+        assertArrayEquals(concat(withValue(20).bytes(), padding), change.data());
+
+        change.setPaddingAfter(false);
+        assertArrayEquals(concat(padding, withValue(20).bytes()), change.data());
+
+        change.insertPadding(new byte[]{4}, true);
+        assertArrayEquals(concat(new byte[]{4, 1, 2, 3}, withValue(20).bytes()), change.data());
+    }
+
+    @Test
+    void clear_Should_invalidateCachedBytes() {
+        change.setPadding(new byte[]{1});
+        change.data();
+
+        change.clear();
+
+        assertEquals(0, change.data().length);
+        assertTrue(change.isEmpty());
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import br.com.pinter.tqrespec.save.stash.StashLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDataMapTest {
+    private FileDataMap dataMap;
+
+    @BeforeEach
+    void setUp() {
+        StashLoader stashLoader = new StashLoader();
+        assertTrue(stashLoader.loadStash(Paths.get("src/test/resources/_savegame"), "savegame"));
+        dataMap = stashLoader.getSaveData().getDataMap();
+    }
+
+    @Test
+    void commit_Should_keepChangesStagedOutsideBatch() throws InterruptedException {
+        int width = dataMap.getInt("sackWidth");
+        int height = dataMap.getInt("sackHeight");
+
+        dataMap.begin();
+        dataMap.setInt("sackWidth", width + 1);
+        Thread other = new Thread(() -> dataMap.setInt("sackHeight", height + 1));
+        other.start();
+        other.join();
+        dataMap.commit();
+
+        assertEquals(width + 1, dataMap.getInt("sackWidth"));
+        assertEquals(height + 1, dataMap.getInt("sackHeight"));
+        assertNotNull(dataMap.getChange(dataMap.handle("sackWidth").getVariable().getValOffset()));
+        assertNotNull(dataMap.getChange(dataMap.handle("sackHeight").getVariable().getValOffset()));
+    }
+
+    @Test
+    void commit_Should_publishWholeBatchToConcurrentReaders() throws InterruptedException {
+        int width = dataMap.getInt("sackWidth");
+        int height = dataMap.getInt("sackHeight");
+        int widthOffset = dataMap.handle("sackWidth").getVariable().getValOffset();
+        int heightOffset = dataMap.handle("sackHeight").getVariable().getValOffset();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean torn = new AtomicBoolean();
+
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                Set<Integer> offsets = dataMap.changesKeySet();
+                if (offsets.contains(widthOffset) != offsets.contains(heightOffset)) {
+                    torn.set(true);
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 2000; i++) {
+            int value = width + 1 + i % 2;
+            dataMap.edit(tx -> {
+                tx.setInt("sackWidth", value);
+                tx.setInt("sackHeight", height + value - width);
+            });
+            dataMap.edit(tx -> {
+                tx.setInt("sackWidth", width);
+                tx.setInt("sackHeight", height);
+            });
+        }
+        done.set(true);
+        reader.join();
+
+        assertFalse(torn.get());
+    }
+
+    @Test
+    void commit_Should_removeChangesRevertedInsideBatch() {
+        int width = dataMap.getInt("sackWidth");
+        dataMap.setInt("sackWidth", width + 1);
+
+        dataMap.edit(tx -> tx.setInt("sackWidth", width));
+
+        assertFalse(dataMap.isDirty());
+        assertEquals(width, dataMap.getInt("sackWidth"));
+    }
+
+    @Test
+    void edit_Should_releaseBatchWhenOperationThrowsError() throws InterruptedException {
+        int width = dataMap.getInt("sackWidth");
+
+        assertThrows(AssertionError.class, () -> dataMap.edit(tx -> {
+            tx.setInt("sackWidth", width + 1);
+            throw new AssertionError("failed");
+        }));
+
+        assertFalse(dataMap.isBatchInProgress());
+        assertFalse(dataMap.isDirty());
+        Thread other = new Thread(() -> dataMap.edit(tx -> tx.setInt("sackWidth", width + 2)));
+        other.start();
+        other.join(5000);
+        assertFalse(other.isAlive());
+        assertEquals(width + 2, dataMap.getInt("sackWidth"));
+    }
+
+    @Test
+    void handle_Should_followValueStagedAtValOffset() {
+        VariableHandle sackWidth = dataMap.handle("sackWidth");
+        int width = dataMap.readInt(sackWidth);
+
+        dataMap.setInt("sackWidth", width + 1);
+        assertEquals(width + 1, dataMap.readInt(sackWidth));
+        assertEquals(width + 1, sackWidth.getStaged().getValue());
+
+        dataMap.setInt("sackWidth", width);
+        assertNull(sackWidth.getStaged());
+        assertEquals(width, dataMap.readInt(sackWidth));
+    }
+
+    @Test
+    void removeVariable_Should_invalidateHandleOfRemovedVariable() {
+        VariableHandle sackWidth = dataMap.handle("sackWidth");
+        VariableHandle sackHeight = dataMap.handle("sackHeight");
+        int width = dataMap.readInt(sackWidth);
+        dataMap.writeInt(sackWidth, width + 1);
+        assertTrue(sackWidth.isResolved());
+
+        dataMap.removeVariable(sackWidth.getVariable());
+
+        assertTrue(dataMap.isVariableRemoved(sackWidth.getVariable()));
+        assertFalse(sackWidth.isResolved());
+        assertNull(sackWidth.getStaged());
+        assertTrue(sackHeight.isResolved());
+    }
+
+    @Test
+    void writeInt_Should_stageNewChangeLeavingStagedOneUntouched() {
+        VariableHandle sackWidth = dataMap.handle("sackWidth");
+        int offset = sackWidth.getVariable().getValOffset();
+        int width = dataMap.readInt(sackWidth);
+
+        dataMap.writeInt(sackWidth, width + 1);
+        DataChange staged = dataMap.getChange(offset);
+        byte[] rendered = staged.data().clone();
+        dataMap.writeInt(sackWidth, width + 2);
+
+        assertNotSame(staged, dataMap.getChange(offset));
+        assertArrayEquals(rendered, staged.data());
+        assertEquals(width + 1, ((DataChangeVariable) staged).getVariable(sackWidth.getVariable()).getValue());
+        assertEquals(width + 2, dataMap.readInt(sackWidth));
+        assertEquals(width + 2, dataMap.getInt("sackWidth"));
+
+        dataMap.writeInt(sackWidth, width);
+        assertFalse(dataMap.isDirty());
+    }
+
+    @Test
+    void setInt_Should_dropChangeRestoringOriginalValue() {
+        int width = dataMap.getInt("sackWidth");
+        VariableHandle sackHeight = dataMap.handle("sackHeight");
+        int height = dataMap.readInt(sackHeight);
+
+        assertFalse(dataMap.isDirty());
+        for (int i = 1; i <= 50; i++) {
+            dataMap.setInt("sackWidth", width + i);
+            dataMap.writeInt(sackHeight, height + i);
+        }
+        assertTrue(dataMap.isDirty());
+
+        dataMap.setInt("sackWidth", width);
+        dataMap.writeInt(sackHeight, height);
+
+        assertFalse(dataMap.isDirty());
+        assertEquals(width, dataMap.getInt("sackWidth"));
+        assertEquals(height, dataMap.readInt(sackHeight));
+    }
+
+    @Test
+    void restore_Should_stageAllChangesOrNone() {
+        VariableInfo width = dataMap.handle("sackWidth").getVariable();
+        VariableInfo height = dataMap.handle("sackHeight").getVariable();
+        byte[] newWidth = {9, 0, 0, 0};
+
+        // a change not replacing a whole value isn't restored, neither are the others
+        assertFalse(dataMap.restore(Map.of(width.getValOffset(), new ChangeJournal.Pending(4, newWidth),
+                height.getValOffset(), new ChangeJournal.Pending(4, new byte[]{1, 0}))));
+        assertFalse(dataMap.isDirty());
+
+        assertTrue(dataMap.restore(Map.of(width.getValOffset(), new ChangeJournal.Pending(4, newWidth))));
+        assertEquals(9, dataMap.getInt("sackWidth"));
+        assertEquals(9, dataMap.readInt(dataMap.handle("sackWidth")));
+    }
+
+    @Test
+    void withChanges_Should_keepOnlyChangesStagedWhenCopied() {
+        int width = dataMap.getInt("sackWidth");
+        int height = dataMap.getInt("sackHeight");
+        int widthOffset = dataMap.handle("sackWidth").getVariable().getValOffset();
+        dataMap.setInt("sackWidth", width + 1);
+
+        FileDataMap copy = dataMap.withChanges(dataMap.getStagedChanges());
+        dataMap.setInt("sackHeight", height + 1);
+        dataMap.setInt("sackWidth", width + 2);
+
+        assertEquals(Set.of(widthOffset), copy.changesKeySet());
+        assertArrayEquals(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(width + 1).array(),
+                copy.getBytes(widthOffset));
+        assertEquals(2, dataMap.changesKeySet().size());
+    }
+
+    @Test
+    void rebase_Should_stageChangesAgainstContentWritten() {
+        ByteBuffer original = ByteBuffer.wrap(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15});
+        Map<Integer, ChangeJournal.Pending> written = Map.of(
+                2, new ChangeJournal.Pending(2, new byte[]{20, 21, 22}),
+                12, new ChangeJournal.Pending(2, new byte[]{30, 31}));
+        Map<Integer, ChangeJournal.Pending> staged = Map.of(
+                8, new ChangeJournal.Pending(2, new byte[]{40, 41}),
+                12, new ChangeJournal.Pending(2, new byte[]{30, 31}));
+
+        FileDataMap rebased = FileDataMap.rebase(original, written, staged);
+
+        // the change reverted restores the loaded bytes, the change already written is left out
+        assertEquals(Set.of(2, 9), rebased.changesKeySet());
+        assertArrayEquals(new byte[]{2, 3}, rebased.getBytes(2));
+        assertEquals(3, rebased.getPreviousValueLength(2));
+        assertArrayEquals(new byte[]{40, 41}, rebased.getBytes(9));
+        assertNull(FileDataMap.rebase(original, written, Map.of(3, new ChangeJournal.Pending(1, new byte[]{1}))));
+    }
+
+    @Test
+    void setChangeListener_Should_receiveBytesStagedAndDroppedChanges() {
+        int width = dataMap.getInt("sackWidth");
+        int height = dataMap.getInt("sackHeight");
+        int widthOffset = dataMap.handle("sackWidth").getVariable().getValOffset();
+        Map<Integer, ChangeJournal.Pending> staged = new HashMap<>();
+        dataMap.setChangeListener((offset, change) -> {
+            if (change == null) {
+                staged.remove(offset);
+            } else {
+                staged.put(offset, change);
+            }
+        });
+
+        dataMap.setInt("sackWidth", width + 1);
+        assertArrayEquals(dataMap.getBytes(widthOffset), staged.get(widthOffset).data());
+        assertEquals(4, staged.get(widthOffset).previousLength());
+
+        dataMap.setInt("sackWidth", width);
+        assertTrue(staged.isEmpty());
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import br.com.pinter.tqrespec.save.stash.StashData;
+import br.com.pinter.tqrespec.save.stash.StashLoader;
+import br.com.pinter.tqrespec.util.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FileWriterTest {
+    private Path dir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("writer");
+        file = dir.resolve("Player.chr");
+    }
+
+    private static final class TestWriter extends FileWriter {
+        private final StashData saveData;
+
+        private TestWriter(StashData saveData) {
+            this.saveData = saveData;
+        }
+
+        @Override
+        public boolean save() {
+            return false;
+        }
+
+        @Override
+        public int getCrcOffset() {
+            return 0;
+        }
+
+        @Override
+        public boolean isCreateCrc() {
+            return true;
+        }
+
+        @Override
+        protected FileDataHolder getSaveData() {
+            return saveData;
+        }
+    }
+
+    private StashData load(Path stashDir) {
+        StashLoader stashLoader = new StashLoader();
+        assertTrue(stashLoader.loadStash(stashDir, "writer"));
+        return stashLoader.getSaveData();
+    }
+
+    private StashData copyStash() throws IOException {
+        Files.copy(Paths.get("src/test/resources/_savegame", Constants.STASH_FILE), dir.resolve(Constants.STASH_FILE));
+        return load(dir);
+    }
+
+    private static ByteBuffer[] buffers(String... parts) {
+        ByteBuffer[] data = new ByteBuffer[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            data[i] = ByteBuffer.wrap(parts[i].getBytes(StandardCharsets.US_ASCII));
+        }
+        return data;
+    }
+
+    private long files() throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.count();
+        }
+    }
+
+    @Test
+    void commit_Should_replaceContentWithoutLeavingTemporaryFile() throws IOException {
+        Files.writeString(file, "previous content, longer than the new one");
+
+        FileWriter.commit(file, buffers("new ", "content"));
+
+        assertEquals("new content", Files.readString(file));
+        assertEquals(1, files());
+    }
+
+    @Test
+    void commit_Should_createFileNotExisting() throws IOException {
+        FileWriter.commit(file, buffers("content"));
+
+        assertEquals("content", Files.readString(file));
+        assertEquals(1, files());
+    }
+
+    @Test
+    void commit_Should_leaveTemporaryFileOfAnotherWriterUntouched() throws IOException {
+        Files.writeString(file, "previous");
+        Path other = dir.resolve("Player.chr.tmp");
+        Files.writeString(other, "partial content of another write");
+
+        FileWriter.commit(file, buffers("new"));
+
+        assertEquals("new", Files.readString(file));
+        assertEquals("partial content of another write", Files.readString(other));
+        assertEquals(2, files());
+    }
+
+    @Test
+    void commit_Should_replaceFileWrittenConcurrently() throws Exception {
+        Files.writeString(file, "previous");
+        String first = "a".repeat(100000);
+        String second = "b".repeat(50000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                Future<?> a = executor.submit(() -> {
+                    FileWriter.commit(file, buffers(first));
+                    return null;
+                });
+                Future<?> b = executor.submit(() -> {
+                    FileWriter.commit(file, buffers(second));
+                    return null;
+                });
+                a.get();
+                b.get();
+                String content = Files.readString(file);
+                assertTrue(content.equals(first) || content.equals(second));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, files());
+    }
+
+    @Test
+    void commit_Should_keepPermissionsOfReplacedFile() throws IOException {
+        assumeTrue(Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class));
+        Files.writeString(file, "previous");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(file, permissions);
+
+        FileWriter.commit(file, buffers("new"));
+
+        assertEquals(permissions, Files.getPosixFilePermissions(file));
+    }
+
+    @Test
+    void commit_Should_removeTemporaryFileWhenMoveFails() throws IOException {
+        // a directory that isn't empty can't be replaced by the move
+        Files.createDirectory(file);
+        Files.writeString(file.resolve("winsys.dxb"), "previous");
+
+        assertThrows(IOException.class, () -> FileWriter.commit(file, buffers("new")));
+
+        assertTrue(Files.isDirectory(file));
+        assertEquals("previous", Files.readString(file.resolve("winsys.dxb")));
+        assertEquals(1, files());
+    }
+
+    @Test
+    void writeBuffers_Should_writeEachTargetWithItsValue() throws IOException {
+        StashData stashData = copyStash();
+        FileDataMap dataMap = stashData.getDataMap();
+        int width = dataMap.getInt("sackWidth");
+        dataMap.setInt("sackWidth", width + 1);
+        Files.createDirectory(dir.resolve("one"));
+        Files.createDirectory(dir.resolve("two"));
+        Map<String, String> targets = new LinkedHashMap<>();
+        targets.put("one/" + Constants.STASH_FILE, "one");
+        targets.put("two/" + Constants.STASH_FILE, "a longer value than the first one");
+
+        new TestWriter(stashData).writeBuffers(dir.toString(), "fName", targets);
+
+        for (Map.Entry<String, String> target : targets.entrySet()) {
+            FileDataMap written = load(dir.resolve(target.getKey()).getParent()).getDataMap();
+            assertEquals(target.getValue(), written.getString("fName"));
+            assertEquals(width + 1, written.getInt("sackWidth"));
+        }
+    }
+
+    @Test
+    void writeBuffers_Should_writeOtherTargetsWhenOneFails() throws IOException {
+        StashData stashData = copyStash();
+        Files.createDirectory(dir.resolve("two"));
+        Map<String, String> targets = new LinkedHashMap<>();
+        targets.put("missing/" + Constants.STASH_FILE, "one");
+        targets.put("two/" + Constants.STASH_FILE, "two");
+
+        TestWriter writer = new TestWriter(stashData);
+        assertThrows(IOException.class, () -> writer.writeBuffers(dir.toString(), "fName", targets));
+
+        assertFalse(Files.exists(dir.resolve("missing")));
+        assertEquals("two", load(dir.resolve("two")).getDataMap().getString("fName"));
+    }
+
+    @Test
+    void writeBuffers_Should_writeNothingWithoutTargets() throws IOException {
+        StashData stashData = copyStash();
+        byte[] stash = Files.readAllBytes(dir.resolve(Constants.STASH_FILE));
+
+        new TestWriter(stashData).writeBuffers(dir.toString(), "fName", Map.of());
+
+        assertArrayEquals(stash, Files.readAllBytes(dir.resolve(Constants.STASH_FILE)));
+        assertEquals(1, files());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringEncoderTest {
+    @Test
+    void fold_Should_replaceAccentedCharactersByBaseCharacter() {
+        assertEquals('A', StringEncoder.fold('Ã'));
+        assertEquals('c', StringEncoder.fold('ç'));
+        assertEquals('e', StringEncoder.fold('é'));
+        assertEquals('n', StringEncoder.fold('ñ'));
+        assertEquals('L', StringEncoder.fold('Ł'));
+        assertEquals('a', StringEncoder.fold('a'));
+        assertEquals('Ж', StringEncoder.fold('Ж'));
+        // combining mark alone is kept
+        assertEquals('\u0301', StringEncoder.fold('\u0301'));
+    }
+
+    @Test
+    void encode_Should_writeLengthPrefixAndCharactersInEachLayout() {
+        String value = "Ãçé";
+        char[] expected = {'A', 'c', 'e'};
+
+        for (VariableType type : new VariableType[]{VariableType.STRING, VariableType.STRING_UTF_16_LE, VariableType.STRING_UTF_32_LE}) {
+            byte[] data = StringEncoder.encode(value, type);
+            int size = type.dataTypeSize();
+            assertEquals(StringEncoder.length(value, type), data.length);
+            assertEquals(4 + expected.length * size, data.length);
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(expected.length, buffer.getInt());
+            for (char c : expected) {
+                assertEquals((byte) c, buffer.get());
+                if (size > 1) {
+                    assertEquals((byte) (c >> 8), buffer.get());
+                }
+                for (int i = 2; i < size; i++) {
+                    assertEquals(0, buffer.get());
+                }
+            }
+        }
+    }
+
+    @Test
+    void decode_Should_readValueEncodedInEachLayout() {
+        for (VariableType type : new VariableType[]{VariableType.STRING, VariableType.STRING_UTF_16_LE, VariableType.STRING_UTF_32_LE}) {
+            byte[] data = StringEncoder.encode("Ãçé", type);
+            assertEquals("Ace", StringEncoder.decode(data, type));
+            assertNull(StringEncoder.decode(Arrays.copyOf(data, data.length - 1), type));
+        }
+    }
+}
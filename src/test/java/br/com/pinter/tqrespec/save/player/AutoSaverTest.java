@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.save.ChangeJournal;
+import br.com.pinter.tqrespec.save.FileDataMap;
+import br.com.pinter.tqrespec.tqdata.GameInfo;
+import br.com.pinter.tqrespec.util.Constants;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class AutoSaverTest {
+    @Mock
+    private CurrentPlayerData mockSaveData;
+
+    @InjectMocks
+    private CurrentPlayerData saveData;
+
+    @Mock
+    private GameInfo gameInfo;
+
+    @InjectMocks
+    private PlayerWriter playerWriter;
+
+    @InjectMocks
+    private AutoSaver autoSaver;
+
+    private Path load() throws IOException {
+        Path savePath = Files.createTempDirectory("autosave");
+        Files.createDirectories(savePath.resolve(Constants.SAVEDATA));
+        Path playerChr = savePath.resolve("_autosave").resolve(Constants.PLAYERCHR);
+        Files.createDirectories(playerChr.getParent());
+        Files.copy(Paths.get("src/test/resources/_savegame/Player.chr"), playerChr);
+
+        saveData.reset();
+        saveData.setPlayerName("autosave");
+        saveData.setPlayerChr(playerChr);
+        PlayerParser parser = new PlayerParser(playerChr.toFile(), "autosave");
+        saveData.setBuffer(parser.load());
+        saveData.getDataMap().setBlockInfo(parser.getBlockInfo());
+        saveData.getDataMap().setVariableLocation(parser.getVariableLocation());
+        saveData.getDataMap().setVariableAlias(parser.getVariableAlias());
+
+        Mockito.when(mockSaveData.getSession()).thenReturn(saveData.getSession());
+        Mockito.when(mockSaveData.getPlayerChr()).thenReturn(playerChr);
+        Mockito.when(mockSaveData.getPlayerName()).thenReturn("autosave");
+        Mockito.when(mockSaveData.getPlayerPath()).thenReturn(playerChr.getParent());
+        Mockito.when(gameInfo.getSavePath()).thenReturn(savePath.toString());
+        return playerChr;
+    }
+
+    private static FileDataMap read(Path playerChr) {
+        PlayerParser parser = new PlayerParser(playerChr.toFile(), "autosave");
+        parser.load();
+        FileDataMap saved = new FileDataMap();
+        saved.setBlockInfo(parser.getBlockInfo());
+        saved.setVariableLocation(parser.getVariableLocation());
+        saved.setVariableAlias(parser.getVariableAlias());
+        return saved;
+    }
+
+    @Test
+    void watch_Should_coalesceChangesIntoOneWrite() throws IOException, InterruptedException {
+        Path playerChr = load();
+
+        autoSaver.setQuietPeriod(Duration.ofMillis(50));
+        autoSaver.watch(playerWriter.prepareBackup());
+        for (int i = 1; i <= 10; i++) {
+            saveData.getDataMap().setInt("money", 1000 + i);
+        }
+        assertEquals(0, autoSaver.getWrites());
+
+        assertTrue(autoSaver.awaitSaved(Duration.ofSeconds(5)));
+        autoSaver.stop();
+        autoSaver.awaitIdle();
+        assertEquals(1, autoSaver.getWrites());
+        assertEquals(9, autoSaver.getCoalesced());
+
+        assertEquals(1010, read(playerChr).getInt("money"));
+        saveData.reset();
+    }
+
+    @Test
+    void save_Should_writeChangeRevertedAfterBackgroundSave() throws IOException, InterruptedException {
+        Path playerChr = load();
+        Mockito.when(mockSaveData.getDataMap()).thenReturn(saveData.getDataMap());
+        Path journal = playerChr.getParent().resolveSibling("autosave.journal");
+        saveData.getDataMap().setJournal(ChangeJournal.open(journal, saveData.getBuffer()));
+        int money = saveData.getDataMap().getInt("money");
+
+        autoSaver.setQuietPeriod(Duration.ofMillis(50));
+        autoSaver.watch(playerWriter.prepareBackup());
+        saveData.getDataMap().setInt("money", money + 1);
+        assertTrue(autoSaver.awaitSaved(Duration.ofSeconds(5)));
+        assertEquals(money + 1, read(playerChr).getInt("money"));
+
+        // the change reverted is journaled against the content written
+        autoSaver.stop();
+        saveData.getDataMap().setInt("money", money);
+        assertNotNull(saveData.getDataMap().getJournal());
+        saveData.getDataMap().getJournal().sync();
+        assertEquals(1, ChangeJournal.open(journal, ByteBuffer.wrap(Files.readAllBytes(playerChr))).previous().size());
+
+        assertTrue(playerWriter.save());
+        assertEquals(money, read(playerChr).getInt("money"));
+        saveData.reset();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.save.FileDataMap;
+import br.com.pinter.tqrespec.save.SaveLocation;
+import br.com.pinter.tqrespec.tqdata.Db;
+import br.com.pinter.tqrespec.tqdata.GameInfo;
+import br.com.pinter.tqrespec.tqdata.PlayerCharacterFile;
+import br.com.pinter.tqrespec.tqdata.Txt;
+import br.com.pinter.tqrespec.util.Constants;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchWriterTest {
+    @Mock
+    private CurrentPlayerData saveData;
+
+    @Mock
+    private GameInfo gameInfo;
+
+    @Mock
+    private Db db;
+
+    @Mock
+    private Txt txt;
+
+    @InjectMocks
+    private BatchWriter batchWriter;
+
+    @Test
+    void save_Should_saveEveryCharacterAndBackupOriginals() throws IOException {
+        Path savePath = Files.createTempDirectory("batch");
+        byte[] original = Files.readAllBytes(Paths.get("src/test/resources/_savegame/Player.chr"));
+        List<PlayerCharacterFile> characters = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            String name = "batch" + i;
+            Path playerChr = savePath.resolve("_" + name).resolve(Constants.PLAYERCHR);
+            Files.createDirectories(playerChr.getParent());
+            Files.write(playerChr, original);
+            Mockito.when(gameInfo.playerChr(name, SaveLocation.MAIN)).thenReturn(playerChr);
+            characters.add(new PlayerCharacterFile(name, SaveLocation.MAIN));
+        }
+        Mockito.when(gameInfo.getSavePath()).thenReturn(savePath.toString());
+        Mockito.when(saveData.claim(Mockito.any())).thenReturn(true);
+        batchWriter.setParallelism(3);
+
+        BatchWriter.Report report = batchWriter.save(characters, player -> player.setMoney(4242));
+        assertEquals(6, report.getSaved());
+        assertEquals(0, report.getFailed());
+        assertTrue(report.getCharactersPerSecond() > 0);
+
+        try (FileSystem zipFs = FileSystems.newFileSystem(report.backup())) {
+            for (PlayerCharacterFile character : characters) {
+                String name = character.getPlayerName();
+                assertArrayEquals(original, Files.readAllBytes(zipFs.getPath("/MAIN", "_" + name, Constants.PLAYERCHR)));
+
+                PlayerParser parser = new PlayerParser(savePath.resolve("_" + name).resolve(Constants.PLAYERCHR).toFile(), name);
+                parser.load();
+                FileDataMap dataMap = new FileDataMap();
+                dataMap.setBlockInfo(parser.getBlockInfo());
+                dataMap.setVariableLocation(parser.getVariableLocation());
+                dataMap.setVariableAlias(parser.getVariableAlias());
+                assertEquals(4242, dataMap.getInt("money"));
+            }
+        }
+        for (PlayerCharacterFile character : characters) {
+            Path playerChr = savePath.resolve("_" + character.getPlayerName()).resolve(Constants.PLAYERCHR);
+            Mockito.verify(saveData).evict(playerChr);
+            Mockito.verify(saveData).unclaim(playerChr);
+        }
+    }
+
+    @Test
+    void save_Should_refuseCharacterLoadedForEditing() throws IOException {
+        Path savePath = Files.createTempDirectory("batch");
+        Path playerChr = savePath.resolve("_current").resolve(Constants.PLAYERCHR);
+        Files.createDirectories(playerChr.getParent());
+        Files.copy(Paths.get("src/test/resources/_savegame/Player.chr"), playerChr);
+        byte[] original = Files.readAllBytes(playerChr);
+        Mockito.when(gameInfo.playerChr("current", SaveLocation.MAIN)).thenReturn(playerChr);
+        Mockito.when(saveData.isCurrent(playerChr)).thenReturn(true);
+
+        BatchWriter.Report report = batchWriter.save(List.of(new PlayerCharacterFile("current", SaveLocation.MAIN)),
+                player -> player.setMoney(4242));
+        assertEquals(0, report.getSaved());
+        assertEquals(1, report.getFailed());
+        assertNull(report.backup());
+        assertArrayEquals(original, Files.readAllBytes(playerChr));
+    }
+
+    @Test
+    void save_Should_refuseCharacterOpenedForEditingBeforeWrite() throws IOException {
+        Path savePath = Files.createTempDirectory("batch");
+        Path playerChr = savePath.resolve("_opened").resolve(Constants.PLAYERCHR);
+        Files.createDirectories(playerChr.getParent());
+        Files.copy(Paths.get("src/test/resources/_savegame/Player.chr"), playerChr);
+        byte[] original = Files.readAllBytes(playerChr);
+        Mockito.when(gameInfo.playerChr("opened", SaveLocation.MAIN)).thenReturn(playerChr);
+        Mockito.when(gameInfo.getSavePath()).thenReturn(savePath.toString());
+        Mockito.when(saveData.claim(playerChr)).thenReturn(false);
+
+        BatchWriter.Report report = batchWriter.save(List.of(new PlayerCharacterFile("opened", SaveLocation.MAIN)),
+                player -> player.setMoney(4242));
+        assertEquals(0, report.getSaved());
+        assertEquals(1, report.getFailed());
+        assertArrayEquals(original, Files.readAllBytes(playerChr));
+        Mockito.verify(saveData, Mockito.never()).evict(playerChr);
+    }
+}
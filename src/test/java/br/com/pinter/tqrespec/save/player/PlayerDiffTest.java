@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.player;
+
+import br.com.pinter.tqrespec.save.FileDataMap;
+import br.com.pinter.tqrespec.save.exporter.Difference;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayerDiffTest {
+    @Test
+    void compare_Should_reportChangedVariablesAgainstBackupZip() throws IOException {
+        Path original = Path.of("src/test/resources/_savegame/Player.chr");
+        PlayerParser parser = new PlayerParser(original.toFile(), "savegame");
+        parser.load();
+        FileDataMap dataMap = new FileDataMap();
+        dataMap.setBlockInfo(parser.getBlockInfo());
+        dataMap.setVariableLocation(parser.getVariableLocation());
+        dataMap.setVariableAlias(parser.getVariableAlias());
+
+        Path changed = Files.createTempFile("tqrespec", ".chr");
+        byte[] content = Files.readAllBytes(original);
+        int offset = dataMap.handle("money").getVariable().getValOffset();
+        ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, 4321);
+        Files.write(changed, content);
+
+        Path zip = Files.createTempFile("tqrespec", ".zip");
+        Files.delete(zip);
+        try (FileSystem zipFs = FileSystems.newFileSystem(zip, Map.of("create", "true"))) {
+            Files.createDirectories(zipFs.getPath("/_savegame"));
+            Files.copy(original, zipFs.getPath("/_savegame/Player.chr"));
+        }
+
+        assertTrue(PlayerDiff.compare(original, zip).getDifferences().isEmpty());
+
+        List<Difference> differences = PlayerDiff.compare(zip, changed).getDifferences();
+        assertEquals(1, differences.size());
+        Difference money = differences.getFirst();
+        assertEquals("money", money.getName());
+        assertEquals(Difference.Kind.CHANGED, money.getKind());
+        assertEquals(4321, money.getRight().getValue());
+        Files.delete(zip);
+        Files.delete(changed);
+    }
+}
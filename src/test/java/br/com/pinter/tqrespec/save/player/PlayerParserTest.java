@@ -21,6 +21,8 @@
 package br.com.pinter.tqrespec.save.player;
 
 import br.com.pinter.tqrespec.logging.Log;
+import br.com.pinter.tqrespec.save.BlockInfo;
+import br.com.pinter.tqrespec.save.BufferPool;
 import br.com.pinter.tqrespec.save.Platform;
 import br.com.pinter.tqrespec.save.UID;
 import br.com.pinter.tqrespec.save.VariableInfo;
@@ -37,7 +39,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -102,6 +109,42 @@ class PlayerParserTest {
 
     }
 
+    @Test
+    void load_Should_parseFromRecycledBuffer() throws IOException {
+        byte[] content = Files.readAllBytes(Paths.get("src/test/resources/_savegame/Player.chr"));
+        // leave garbage after the end of the file in the buffer reused by the parser
+        ByteBuffer dirty = BufferPool.acquire(content.length);
+        Arrays.fill(dirty.array(), (byte) 0x7F);
+        BufferPool.release(dirty);
+
+        ByteBuffer loaded = playerParser.load();
+        assertSame(dirty.array(), loaded.array());
+        assertEquals(content.length, loaded.capacity());
+        assertEquals(ByteBuffer.wrap(content), loaded.duplicate().clear());
+
+        PlayerParser fromBytes = new PlayerParser(content, "savegame");
+        fromBytes.load();
+        assertEquals(fromBytes.getBlockInfo().keySet(), playerParser.getBlockInfo().keySet());
+    }
+
+    @Test
+    void buildBlocksTable_Should_linkChildrenAndPaths() {
+        parse();
+
+        for (BlockInfo block : playerParser.getBlockInfo().values()) {
+            for (int child : block.getChildren()) {
+                assertEquals(block.getStart(), playerParser.getBlockInfo().get(child).getParentOffset());
+                assertEquals(block.getDepth() + 1, playerParser.getBlockInfo().get(child).getDepth());
+            }
+            assertNotNull(block.getPath());
+        }
+
+        BlockInfo sack = playerParser.getBlockInfo().values().stream()
+                .filter(b -> b.getBlockType().equals(PlayerBlockType.PLAYER_INVENTORY_SACK))
+                .min(Comparator.comparing(BlockInfo::getStart)).orElseThrow();
+        assertEquals("PLAYER_INVENTORY[0]/PLAYER_INVENTORY_SACK[0]", sack.getPath());
+    }
+
     private void parse() {
         try {
             saveData.reset();
@@ -109,6 +152,7 @@ class PlayerParserTest {
             saveData.getDataMap().setBlockInfo(playerParser.getBlockInfo());
             saveData.setHeaderInfo(playerParser.getHeaderInfo());
             saveData.getDataMap().setVariableLocation(playerParser.getVariableLocation());
+            saveData.getDataMap().setVariableAlias(playerParser.getVariableAlias());
         } catch (Exception e) {
             logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
             fail();
@@ -158,6 +202,21 @@ class PlayerParserTest {
         assertFalse(variableLocation.isEmpty());
     }
 
+    @Test
+    void getVariableAlias_Should_returnAliasedTempVariables() {
+        try {
+            playerParser.parse();
+        } catch (Exception e) {
+            logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
+        }
+        ConcurrentMap<String, List<VariableInfo>> variableAlias = playerParser.getVariableAlias();
+        for (String alias : List.of("difficulty", "str", "int", "dex", "life", "mana")) {
+            assertEquals(1, variableAlias.get(alias).size());
+            assertEquals("temp", variableAlias.get(alias).getFirst().getName());
+            assertEquals(alias, variableAlias.get(alias).getFirst().getAlias());
+        }
+    }
+
     @Test
     void parse_Should_parseWholeSavegame() {
         try {
@@ -295,6 +354,20 @@ class PlayerParserTest {
         assertTrue(hadesNormal && hadesEpic && hadesLegendary && helosNormal && helosEpic && helosLegendary);
     }
 
+    @Test
+    void uid_Should_matchStringAndBytesRepresentation() {
+        final String helos = "4136144580-999965812-3093316465-1160239764";
+        UID fromString = new UID(helos);
+        UID fromBytes = new UID(UID.convertUidStringToByte(helos));
+        assertEquals(fromString, fromBytes);
+        assertEquals(fromString.hashCode(), fromBytes.hashCode());
+        assertEquals(helos, fromBytes.getUid());
+        assertArrayEquals(fromString.getBytes(), fromBytes.getBytes());
+        assertNull(UID.convertUidByteToString(new byte[16]));
+        assertThrows(IllegalArgumentException.class, () -> new UID("0-0-0-0"));
+        assertThrows(IllegalArgumentException.class, () -> new UID("1-2-3"));
+    }
+
     @Test
     void readMonsterName_Should_readMonsterNameFromSavegame() {
         assertEquals("{^r}Hades ~ God of the Dead", readStringVar(PlayerFileVariable.valueOf(Platform.WINDOWS, "greatestMonsterKilledName").variable()));
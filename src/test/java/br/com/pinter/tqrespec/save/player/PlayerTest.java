@@ -6,9 +6,14 @@ package br.com.pinter.tqrespec.save.player;
 
 import br.com.pinter.tqdatabase.models.Skill;
 import br.com.pinter.tqrespec.logging.Log;
+import br.com.pinter.tqrespec.save.BlockInfo;
+import br.com.pinter.tqrespec.save.ChangeJournal;
+import br.com.pinter.tqrespec.save.FileDataMap;
 import br.com.pinter.tqrespec.save.UID;
+import br.com.pinter.tqrespec.save.VariableInfo;
 import br.com.pinter.tqrespec.tqdata.Db;
 import br.com.pinter.tqrespec.tqdata.DefaultMapTeleport;
+import br.com.pinter.tqrespec.tqdata.MapTeleport;
 import br.com.pinter.tqrespec.util.Constants;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -24,10 +29,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static java.lang.System.Logger.Level.ERROR;
@@ -80,6 +87,7 @@ public class PlayerTest {
             saveData.getDataMap().setBlockInfo(playerParser.getBlockInfo());
             saveData.setHeaderInfo(playerParser.getHeaderInfo());
             saveData.getDataMap().setVariableLocation(playerParser.getVariableLocation());
+            saveData.getDataMap().setVariableAlias(playerParser.getVariableAlias());
         } catch (Exception e) {
             logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
             fail();
@@ -480,6 +488,34 @@ public class PlayerTest {
 
     }
 
+    @Test
+    public void shouldUnlockAllTeleportsInBulk() throws IOException {
+        prepareTestSavegame("savegame2", "testplayer");
+
+        injector.injectMembers(player);
+        Mockito.when(mockSaveData.getPlayerChr()).thenReturn(playerChr);
+        Mockito.when(mockSaveData.getBuffer()).thenReturn(saveData.getBuffer());
+
+        Set<UID> all = new HashSet<>();
+        for (MapTeleport tp : DefaultMapTeleport.getAll()) {
+            all.add(tp.getUid());
+        }
+
+        player.updateTeleports(Map.of(0, all, 1, all, 2, all), Map.of());
+        player.updateTeleports(Map.of(), Map.of(0, Set.of(DefaultMapTeleport.get(1).getUid())));
+
+        playerWriter.save();
+        parse();
+
+        assertEquals(all.size() - 1, player.getTeleportUIDsSize(0));
+        assertEquals(all.size(), player.getTeleportUIDsSize(1));
+        assertEquals(all.size(), player.getTeleportUIDsSize(2));
+        for (TeleportDifficulty td : player.getTeleportDifficulty()) {
+            assertEquals(player.getTeleportUIDsSize(td.getDifficulty()), td.getTeleports().size());
+        }
+        assertFalse(player.getTeleportDifficulty().getFirst().getTeleports().contains(DefaultMapTeleport.get(1).getUid()));
+    }
+
     @Test
     public void shouldPassAddAndRemoveMultilpeTeleports() throws IOException {
         prepareTestSavegame("savegame3", "testplayer");
@@ -549,4 +585,120 @@ public class PlayerTest {
 
     }
 
+    @Test
+    public void activate_Should_switchToRetainedSession() throws IOException {
+        prepareTestSavegame("savegame", "testplayer");
+        saveData.setPlayerChr(playerChr);
+        saveData.retain();
+        FileDataMap first = saveData.getDataMap();
+
+        saveData.detach();
+        assertNull(saveData.getBuffer());
+        assertFalse(saveData.activate(Path.of("src/test/resources/_savegame/Player.chr").toAbsolutePath()));
+
+        assertTrue(saveData.activate(playerChr));
+        assertSame(first, saveData.getDataMap());
+        assertEquals(1, saveData.getSessionCount());
+
+        saveData.reset();
+        assertEquals(0, saveData.getSessionCount());
+        assertFalse(saveData.activate(playerChr));
+    }
+
+    @Test
+    public void detach_Should_keepSessionWithPendingChanges() throws IOException {
+        prepareTestSavegame("savegame", "testplayer");
+        saveData.setPlayerChr(playerChr);
+        saveData.retain();
+        Path journal = Files.createTempFile("tqrespec", ".journal");
+        saveData.getDataMap().setJournal(ChangeJournal.open(journal, saveData.getBuffer()));
+        saveData.getDataMap().setInt("money", 4321);
+        saveData.getDataMap().getJournal().sync();
+
+        saveData.detach();
+
+        assertTrue(Files.exists(journal));
+        assertTrue(saveData.hasPendingChanges(playerChr));
+        assertTrue(saveData.activate(playerChr));
+        assertEquals(4321, saveData.getDataMap().getInt("money"));
+        saveData.reset();
+    }
+
+    @Test
+    public void setMaxSessions_Should_keepSessionsWithPendingChanges() throws IOException {
+        prepareTestSavegame("savegame", "testplayer");
+        saveData.setPlayerChr(playerChr);
+        saveData.retain();
+        saveData.getDataMap().setInt("money", 4321);
+        saveData.detach();
+        Path other = Path.of("src/test/resources/_savegame/Player.chr").toAbsolutePath();
+        saveData.setPlayerChr(other);
+        saveData.setBuffer(ByteBuffer.allocate(16));
+        saveData.retain();
+        saveData.detach();
+        assertEquals(2, saveData.getSessionCount());
+
+        saveData.setMaxSessions(1);
+
+        assertEquals(1, saveData.getSessionCount());
+        assertTrue(saveData.activate(playerChr));
+        assertFalse(saveData.activate(other));
+        saveData.setMaxSessions(4);
+        saveData.reset();
+    }
+
+    @Test
+    public void evict_Should_unloadRetainedSessionButNotCurrent() throws IOException {
+        prepareTestSavegame("savegame", "testplayer");
+        saveData.setPlayerChr(playerChr);
+        saveData.retain();
+        assertTrue(saveData.isCurrent(playerChr));
+
+        saveData.evict(playerChr);
+        assertEquals(1, saveData.getSessionCount());
+        assertNotNull(saveData.getBuffer());
+
+        saveData.detach();
+        assertFalse(saveData.isCurrent(playerChr));
+        saveData.evict(playerChr);
+        assertEquals(0, saveData.getSessionCount());
+        assertFalse(saveData.activate(playerChr));
+    }
+
+    @Test
+    public void claim_Should_refuseCurrentAndDelayActivation() throws Exception {
+        prepareTestSavegame("savegame", "testplayer");
+        saveData.setPlayerChr(playerChr);
+        saveData.retain();
+        assertFalse(saveData.claim(playerChr));
+
+        saveData.detach();
+        assertTrue(saveData.claim(playerChr));
+        assertFalse(saveData.claim(playerChr));
+        Thread activation = new Thread(() -> saveData.activate(playerChr));
+        activation.start();
+        activation.join(200);
+        assertTrue(activation.isAlive());
+
+        saveData.unclaim(playerChr);
+        activation.join(5000);
+        assertFalse(activation.isAlive());
+        saveData.reset();
+    }
+
+    @Test
+    public void getSortedVariables_Should_orderPlayerMainVariablesByOffset() throws IOException {
+        prepareTestSavegame("savegame", "testplayer");
+
+        BlockInfo main = saveData.getDataMap().getFirstBlock(PlayerBlockType.PLAYER_MAIN);
+        assertNotNull(main);
+        assertEquals(1, saveData.getDataMap().getBlocks(PlayerBlockType.PLAYER_MAIN).size());
+
+        List<VariableInfo> sizes = saveData.getDataMap().getSortedVariables(main).get(Constants.Save.VAR_TELEPORTUIDSSIZE);
+        assertEquals(3, sizes.size());
+        assertTrue(sizes.get(0).getKeyOffset() < sizes.get(1).getKeyOffset());
+        assertTrue(sizes.get(1).getKeyOffset() < sizes.get(2).getKeyOffset());
+        assertSame(sizes.get(2), player.getTeleportUIDsSizeVar(2));
+    }
+
 }
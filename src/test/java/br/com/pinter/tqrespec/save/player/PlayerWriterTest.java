@@ -22,6 +22,7 @@ package br.com.pinter.tqrespec.save.player;
 
 import br.com.pinter.tqrespec.logging.Log;
 import br.com.pinter.tqrespec.save.Platform;
+import br.com.pinter.tqrespec.save.VariableHandle;
 import br.com.pinter.tqrespec.save.stash.StashData;
 import br.com.pinter.tqrespec.save.stash.StashLoader;
 import br.com.pinter.tqrespec.save.stash.StashWriter;
@@ -87,6 +88,7 @@ class PlayerWriterTest {
             saveData.getDataMap().setBlockInfo(playerParser.getBlockInfo());
             saveData.setHeaderInfo(playerParser.getHeaderInfo());
             saveData.getDataMap().setVariableLocation(playerParser.getVariableLocation());
+            saveData.getDataMap().setVariableAlias(playerParser.getVariableAlias());
         } catch (Exception e) {
             logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
             fail();
@@ -130,6 +132,7 @@ class PlayerWriterTest {
             saveData.getDataMap().setBlockInfo(playerParser.getBlockInfo());
             saveData.setHeaderInfo(playerParser.getHeaderInfo());
             saveData.getDataMap().setVariableLocation(playerParser.getVariableLocation());
+            saveData.getDataMap().setVariableAlias(playerParser.getVariableAlias());
             int isInMainQuestAfter = saveData.getDataMap().getInt("isInMainQuest");
             assertTrue(isInMainQuestBefore != isInMainQuestAfter && isInMainQuestAfter == 0);
 
@@ -155,6 +158,7 @@ class PlayerWriterTest {
             logger.log(INFO,"PLATFORM " + playerParser.getDetectedPlatform());
             saveData.setHeaderInfo(playerParser.getHeaderInfo());
             saveData.getDataMap().setVariableLocation(playerParser.getVariableLocation());
+            saveData.getDataMap().setVariableAlias(playerParser.getVariableAlias());
             logger.log(INFO,"PLAYER " + saveData.getDataMap().getCharacterName());
         } catch (Exception e) {
             logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
@@ -190,6 +194,10 @@ class PlayerWriterTest {
             fail();
         }
 
+        parseCopiedSavegame();
+    }
+
+    private void parseCopiedSavegame() {
         File testcopyChr = new File("src/test/resources/_testcopy/Player.chr");
         playerParser = new PlayerParser(testcopyChr,
                 "testcopy");
@@ -202,6 +210,7 @@ class PlayerWriterTest {
             saveData.getDataMap().setBlockInfo(playerParser.getBlockInfo());
             saveData.setHeaderInfo(playerParser.getHeaderInfo());
             saveData.getDataMap().setVariableLocation(playerParser.getVariableLocation());
+            saveData.getDataMap().setVariableAlias(playerParser.getVariableAlias());
         } catch (Exception e) {
             logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
             fail();
@@ -266,6 +275,65 @@ class PlayerWriterTest {
         assertEquals(121, saveData.getDataMap().getInt("modifierPoints"), 0);
     }
 
+    @Test
+    void edit_Should_writeAllChangesOfBatch() {
+        prepareCopySavegame();
+
+        saveData.getDataMap().edit(tx -> {
+            tx.setInt("modifierPoints", 121);
+            tx.setInt("modifierPoints", 122);
+            tx.setInt("money", 12345);
+        });
+
+        copyAndParseSavegame();
+
+        assertEquals(122, saveData.getDataMap().getInt("modifierPoints"), 0);
+        assertEquals(12345, saveData.getDataMap().getInt("money"), 0);
+    }
+
+    @Test
+    void edit_Should_leaveMapUntouchedWhenBatchFails() {
+        prepareCopySavegame();
+
+        saveData.getDataMap().setInt("money", 100);
+        int modifierPoints = saveData.getDataMap().getInt("modifierPoints");
+
+        assertThrows(IllegalArgumentException.class, () -> saveData.getDataMap().edit(tx -> {
+            tx.setInt("modifierPoints", 121);
+            tx.setInt("money", 12345);
+            tx.setInt("invalidVariableName", 1);
+        }));
+
+        assertFalse(saveData.getDataMap().isBatchInProgress());
+        assertEquals(modifierPoints, saveData.getDataMap().getInt("modifierPoints"), 0);
+        assertEquals(100, saveData.getDataMap().getInt("money"), 0);
+
+        copyAndParseSavegame();
+
+        assertEquals(modifierPoints, saveData.getDataMap().getInt("modifierPoints"), 0);
+        assertEquals(100, saveData.getDataMap().getInt("money"), 0);
+    }
+
+    @Test
+    void writeInt_Should_writeAndReadHandleFromSaveGame() {
+        prepareCopySavegame();
+
+        VariableHandle money = saveData.getDataMap().handle("money");
+        VariableHandle str = saveData.getDataMap().tempAttrHandle("str");
+        saveData.getDataMap().writeInt(money, 1000);
+        saveData.getDataMap().writeInt(money, 12345);
+        saveData.getDataMap().writeInt(str, 300);
+
+        assertEquals(12345, saveData.getDataMap().readInt(money));
+        assertEquals(300, saveData.getDataMap().readInt(str));
+
+        copyAndParseSavegame();
+
+        assertFalse(saveData.getDataMap().isValid(money));
+        assertEquals(12345, saveData.getDataMap().readInt(saveData.getDataMap().handle("money")));
+        assertEquals(300, saveData.getDataMap().readInt(saveData.getDataMap().tempAttrHandle("str")));
+    }
+
     @Test
     void writeStr_Should_writeAndReadStrFromSaveGame() {
         prepareCopySavegame();
@@ -339,6 +407,29 @@ class PlayerWriterTest {
         assertEquals("testcopy", saveData.getDataMap().getCharacterName());
     }
 
+    @Test
+    void copyConvert_Should_keepPendingChangesAndLeaveCurrentSaveUntouched() {
+        prepareCopySavegame();
+        saveData.getDataMap().setInt("isInMainQuest", 0);
+
+        try {
+            playerWriter.copyCurrentSave("testcopy", Platform.MOBILE, null);
+        } catch (IOException e) {
+            logger.log(ERROR, Constants.ERROR_MSG_EXCEPTION, e);
+            fail();
+        }
+
+        assertEquals(Platform.WINDOWS, saveData.getDataMap().getPlatform());
+        assertNotEquals("testcopy", saveData.getDataMap().getCharacterName());
+        assertNull(saveData.getDataMap().getString("mySaveId"));
+
+        parseCopiedSavegame();
+
+        assertEquals("testcopy", saveData.getDataMap().getCharacterName());
+        assertEquals(0, saveData.getDataMap().getInt("isInMainQuest"));
+        assertNotNull(saveData.getDataMap().getString("mySaveId"));
+    }
+
     @Test
     void copyMobilePlayer_Should_copyAndParse() {
         prepareCopySavegame("mobile");
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2025 Emerson Pinter - All Rights Reserved
+ */
+
+/*    This file is part of TQ Respec.
+
+    TQ Respec is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TQ Respec is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TQ Respec.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package br.com.pinter.tqrespec.save.stash;
+
+import br.com.pinter.tqrespec.save.VariableInfo;
+import br.com.pinter.tqrespec.util.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StashWriterTest {
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("stash");
+        for (String file : List.of(Constants.STASH_FILE, Constants.STASH_FILE_BACKUP)) {
+            Files.copy(Paths.get("src/test/resources/_savegame", file), dir.resolve(file));
+        }
+    }
+
+    private StashData load() {
+        StashLoader stashLoader = new StashLoader();
+        assertTrue(stashLoader.loadStash(dir, "stash"));
+        return stashLoader.getSaveData();
+    }
+
+    @Test
+    void save_Should_writeCrcWithoutChangingSourceBuffer() throws IOException {
+        StashData stashData = load();
+        stashData.getBuffer().position(4).limit(stashData.getBuffer().capacity() - 4);
+        StashWriter stashWriter = new StashWriter(stashData);
+        assertTrue(stashWriter.save());
+        assertEquals(4, stashData.getBuffer().position());
+        assertEquals(stashData.getBuffer().capacity() - 4, stashData.getBuffer().limit());
+
+        for (String file : List.of(Constants.STASH_FILE, Constants.STASH_FILE_BACKUP)) {
+            ByteBuffer written = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(file))).order(ByteOrder.LITTLE_ENDIAN);
+            int crc = written.getInt(stashWriter.getCrcOffset());
+            written.putInt(stashWriter.getCrcOffset(), 0);
+            assertEquals(crc, stashWriter.calculateCRC32(written));
+        }
+    }
+
+    @Test
+    void save_Should_restorePreviousContentWhenVerificationFails() throws IOException {
+        StashData stashData = load();
+        byte[] dxb = Files.readAllBytes(dir.resolve(Constants.STASH_FILE));
+        byte[] dxg = Files.readAllBytes(dir.resolve(Constants.STASH_FILE_BACKUP));
+
+        // the key written in the file no longer matches the variable in the model
+        VariableInfo fName = stashData.getDataMap().handle("fName").getVariable();
+        fName.setName("fNamx");
+        assertFalse(new StashWriter(stashData).save());
+        assertArrayEquals(dxb, Files.readAllBytes(dir.resolve(Constants.STASH_FILE)));
+        assertArrayEquals(dxg, Files.readAllBytes(dir.resolve(Constants.STASH_FILE_BACKUP)));
+
+        fName.setName("fName");
+        assertTrue(new StashWriter(stashData).save());
+    }
+
+    @Test
+    void writeTo_Should_streamSameContentAsSavedFile() throws IOException {
+        StashData stashData = load();
+        StashWriter stashWriter = new StashWriter(stashData);
+        assertTrue(stashWriter.save());
+
+        // the variable keeps the value of the last file written
+        byte[] saved = Files.readAllBytes(dir.resolve(Constants.STASH_FILE_BACKUP));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(saved.length, stashWriter.writeTo(out, stashData.getDataMap()));
+        assertArrayEquals(saved, out.toByteArray());
+    }
+}